@@ -0,0 +1,62 @@
+#!/usr/bin/env python3
+# -*-Python-*-
+
+"""Usage: compare.py [--tolerance=FRACTION] BASELINE RESULTS
+
+Compare two JMH result files in JSON form (as written by -rf json).
+Print each benchmark's primary score in both, and the change.  Exit with
+status 1 if any benchmark in both files got worse by more than FRACTION
+(default 0.10): lower throughput, or higher time per operation."""
+
+import sys, json, getopt
+
+def scores(name):
+    """Return a dictionary mapping each benchmark in the JMH result file
+    NAME (with its parameters) to (mode, score, unit)."""
+    with open(name) as inp:
+        results = json.load(inp)
+    table = {}
+    for result in results:
+        params = result.get("params") or {}
+        key = result["benchmark"] + "".join(
+            ":{}={}".format(p, params[p]) for p in sorted(params))
+        metric = result["primaryMetric"]
+        table[key] = (result["mode"], metric["score"], metric["scoreUnit"])
+    return table
+
+def main(args):
+    try:
+        opts, files = getopt.getopt(args, '', ['tolerance='])
+        tolerance = 0.10
+        for opt, val in opts:
+            if opt == '--tolerance':
+                tolerance = float(val)
+        baseline, results = files
+    except (getopt.GetoptError, ValueError):
+        print(__doc__, file=sys.stderr)
+        return 2
+
+    old, new = scores(baseline), scores(results)
+    worse = 0
+    for key in sorted(new):
+        mode, score, unit = new[key]
+        if key not in old:
+            print("{}: {:.3f} {} (new)".format(key, score, unit))
+            continue
+        before = old[key][1]
+        change = (score - before) / before if before else 0.0
+        if mode != "thrpt":
+            change = -change
+        regressed = change < -tolerance
+        worse += regressed
+        print("{}: {:.3f} -> {:.3f} {} ({:+.1%}){}"
+              .format(key, before, score, unit, change,
+                      "  REGRESSION" if regressed else ""))
+    if worse:
+        print("{} benchmark(s) regressed by more than {:.0%}."
+              .format(worse, tolerance))
+        return 1
+    return 0
+
+if __name__ == '__main__':
+    sys.exit(main(sys.argv[1:]))
@@ -0,0 +1,115 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static tablut.Piece.*;
+
+/** Benchmarks of the Board operations that the search spends its time
+ *  in, and of the static evaluation.  Each operation runs over the
+ *  whole corpus (see Positions), so the scores are corpus passes per
+ *  second.
+ *  @author Michael Chien
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmarks {
+
+    /** Load the corpus and list the legal moves of each position. */
+    @Setup
+    public void setUp() {
+        _boards = Positions.corpus();
+        _moves = new int[_boards.length][];
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int k = 0; k < _boards.length; k += 1) {
+            Board board = _boards[k];
+            int n = board.legalMoves(board.turn(), moves);
+            _moves[k] = Arrays.copyOf(moves, n);
+        }
+    }
+
+    /** Generate the moves of the side to move, into a buffer. */
+    @Benchmark
+    public int legalMoves() {
+        int total = 0;
+        for (Board board : _boards) {
+            total += board.legalMoves(board.turn(), _buffer);
+        }
+        return total;
+    }
+
+    /** Generate the moves of the side to move as a list of Moves. */
+    @Benchmark
+    public void legalMoveList(Blackhole sink) {
+        for (Board board : _boards) {
+            sink.consume(board.legalMoves(board.turn()));
+        }
+    }
+
+    /** Make and undo every legal move. */
+    @Benchmark
+    public long makeMoveUndo() {
+        long total = 0;
+        for (int k = 0; k < _boards.length; k += 1) {
+            Board board = _boards[k];
+            for (int move : _moves[k]) {
+                board.makeMove(move);
+                total += board.hash();
+                board.undo();
+            }
+        }
+        return total;
+    }
+
+    /** Encode each position as a string. */
+    @Benchmark
+    public void encodedBoard(Blackhole sink) {
+        for (Board board : _boards) {
+            sink.consume(board.encodedBoard());
+        }
+    }
+
+    /** Collect the squares of each side's pieces. */
+    @Benchmark
+    public void pieceLocations(Blackhole sink) {
+        for (Board board : _boards) {
+            sink.consume(board.pieceLocations(WHITE));
+            sink.consume(board.pieceLocations(BLACK));
+        }
+    }
+
+    /** Evaluate each position statically. */
+    @Benchmark
+    public int staticScore() {
+        int total = 0;
+        for (Board board : _boards) {
+            total += _ai.staticScore(board);
+        }
+        return total;
+    }
+
+    /** The corpus. */
+    private Board[] _boards;
+    /** _moves[k] holds the legal moves in _boards[k]. */
+    private int[][] _moves;
+    /** Scratch space for legalMoves. */
+    private final int[] _buffer = new int[Board.MAX_MOVES];
+    /** The evaluator for staticScore. */
+    private final AI _ai = new AI();
+}
@@ -0,0 +1,127 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static tablut.Piece.*;
+
+/** The fixed corpus of positions that the benchmarks run over: the
+ *  initial position, every position reached in the integration tests
+ *  (the .in files of the testing directory), and positions reached by
+ *  random games from a fixed seed.  Positions that are already won are
+ *  left out, as are repeats.
+ *  @author Michael Chien
+ */
+final class Positions {
+
+    /** Return the corpus, reading the integration tests from the
+     *  directory named by the system property tablut.corpus (default
+     *  ../testing). */
+    static Board[] corpus() {
+        Positions result = new Positions();
+        result.add(new Board());
+        File dir = new File(System.getProperty("tablut.corpus",
+                                               DEFAULT_DIR));
+        File[] tests = dir.listFiles((d, name) -> name.endsWith(".in"));
+        if (tests == null) {
+            throw new IllegalStateException("no corpus directory " + dir);
+        }
+        Arrays.sort(tests);
+        for (File test : tests) {
+            try (BufferedReader in =
+                     new BufferedReader(new FileReader(test))) {
+                result.addScript(in);
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp.getMessage());
+            }
+        }
+        result.addRandomGames();
+        return result._boards.toArray(new Board[0]);
+    }
+
+    /** Return the first N positions of the corpus (all of it if it has
+     *  no more than N). */
+    static Board[] corpus(int n) {
+        Board[] all = corpus();
+        return Arrays.copyOf(all, Math.min(n, all.length));
+    }
+
+    /** Add a copy of BOARD, unless it is won or already present. */
+    private void add(Board board) {
+        if (board.winner() == null && _keys.add(board.hash())) {
+            _boards.add(new Board(board));
+        }
+    }
+
+    /** Add the positions reached by the commands in SCRIPT, a test input
+     *  for Main.  Only moves, "new", and "toggle" change the position;
+     *  other commands are ignored, as are moves by automatic players. */
+    private void addScript(BufferedReader script) throws IOException {
+        Board board = new Board();
+        for (String line = script.readLine(); line != null;
+             line = script.readLine()) {
+            String cmnd = line.replaceFirst("#.*", "").trim().toLowerCase();
+            if (cmnd.equals("new")) {
+                board.init();
+            } else if (cmnd.matches("toggle\\s+" + Square.SQ)) {
+                Square sq = Square.sq(cmnd.substring(cmnd.length() - 2));
+                Piece p = board.get(sq);
+                board.put(p == EMPTY ? WHITE : p == WHITE ? KING
+                          : p == KING ? BLACK : EMPTY, sq);
+                board.clearUndo();
+            } else if (Move.isGrammaticalMove(cmnd)) {
+                Move move = Move.mv(cmnd);
+                if (move != null && board.winner() == null
+                    && board.isLegal(move)) {
+                    board.makeMove(move);
+                    add(board);
+                }
+            }
+        }
+    }
+
+    /** Add the positions every RANDOM_STRIDE plies along RANDOM_GAMES
+     *  random games. */
+    private void addRandomGames() {
+        Random random = new Random(RANDOM_SEED);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int g = 0; g < RANDOM_GAMES; g += 1) {
+            Board board = new Board();
+            while (board.winner() == null
+                   && board.moveCount() < RANDOM_PLIES) {
+                int n = board.legalMoves(board.turn(), moves);
+                if (n == 0) {
+                    break;
+                }
+                board.makeMove(moves[random.nextInt(n)]);
+                if (board.moveCount() % RANDOM_STRIDE == 0) {
+                    add(board);
+                }
+            }
+        }
+    }
+
+    /** Default directory of integration tests. */
+    private static final String DEFAULT_DIR = "../testing";
+
+    /** Seed for the random games. */
+    private static final long RANDOM_SEED = 61;
+    /** Number of random games. */
+    private static final int RANDOM_GAMES = 8;
+    /** Most plies in each random game. */
+    private static final int RANDOM_PLIES = 60;
+    /** Plies between positions taken from a random game. */
+    private static final int RANDOM_STRIDE = 10;
+
+    /** The positions collected. */
+    private final List<Board> _boards = new ArrayList<>();
+    /** Keys of the positions collected. */
+    private final HashSet<Long> _keys = new HashSet<>();
+}
@@ -0,0 +1,76 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of fixed-depth searches by the AI.  Each search starts
+ *  with a fresh AI, so that it does not depend on earlier ones; its time
+ *  includes allocating a small transposition table.  The positions
+ *  searched cycle through the start of the corpus (see Positions).
+ *  @author Michael Chien
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmarks {
+
+    /** Depth of each search. */
+    @Param({ "3", "5" })
+    public int depth;
+
+    /** Load the positions to search. */
+    @Setup
+    public void setUp() {
+        _boards = Positions.corpus(POSITIONS);
+        _options = new SearchOptions();
+        _options.setDepth(depth);
+        _options.setMoveTime(Integer.MAX_VALUE);
+        _options.setHashSize(HASH_SIZE);
+    }
+
+    /** Prepare the next search: a new AI and a copy of the next
+     *  position. */
+    @Setup(Level.Invocation)
+    public void nextSearch() {
+        _ai = new AI(_options);
+        _board = new Board(_boards[_next]);
+        _next = (_next + 1) % _boards.length;
+    }
+
+    /** Search one position to the fixed depth. */
+    @Benchmark
+    public Move findMove() {
+        return _ai.findMove(_board);
+    }
+
+    /** Number of positions searched in turn. */
+    private static final int POSITIONS = 16;
+    /** Size of each search's transposition table, in megabytes. */
+    private static final int HASH_SIZE = 4;
+
+    /** Positions to search. */
+    private Board[] _boards;
+    /** Settings for the searches. */
+    private SearchOptions _options;
+    /** The AI and position for the next search. */
+    private AI _ai;
+    /** See _ai. */
+    private Board _board;
+    /** Index in _boards of the position for the search after next. */
+    private int _next;
+}
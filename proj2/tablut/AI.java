@@ -1,10 +1,16 @@
 package tablut;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static tablut.Board.SIZE;
-import static tablut.Board.THRONE;
 import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
 
 
 
@@ -18,41 +24,119 @@ class AI extends Player {
      * black if negative).
      */
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    /** Maximum number of plies searched below the root. */
+    private static final int MAX_PLY = 64;
     /**
      * A position-score magnitude indicating a forced win in a subsequent
-     * move.  This differs from WINNING_VALUE to avoid putting off wins.
+     * move.  A win K plies from the root scores WINNING_VALUE - K, so
+     * that the search does not put off wins.
      */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    private static final int WILL_WIN_VALUE = WINNING_VALUE - MAX_PLY;
     /**
      * A magnitude greater than a normal value.
      */
     private static final int INFTY = Integer.MAX_VALUE;
-    /** Blackworth. */
+    /** Number of nodes searched between checks of the clock. */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    /** Number of own moves over which to spread the game time when the
+     *  game has no move limit. */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    /** Value of each piece other than the king. */
     private static final int PIECEWORTH = 50;
+    /** Cost to WHITE of each square between the king and the edge. */
+    private static final int KING_EDGE_WORTH = 10;
+    /** ESCAPE_WORTH[k] is the value to WHITE of a king that is k moves
+     *  from the edge (see KingEscape.distance), k > 0. */
+    private static final int[] ESCAPE_WORTH = {
+        0, 2 * PIECEWORTH, 30, 10, 0
+    };
+    /** Value to WHITE of a king with two or more open lines to the edge,
+     *  which usually wins. */
+    private static final int ESCAPE_FORK_WORTH = 8 * PIECEWORTH;
+    /** Value of each square of mobility (see Board.mobility). */
+    private static final int MOBILITY_WORTH = 1;
+    /** Value to WHITE of each WHITE piece next to the throne. */
+    private static final int THRONE_GUARD_WORTH = 5;
+    /** Searches at least this deep start with an aspiration window. */
+    private static final int ASPIRATION_DEPTH = 3;
+    /** Initial half-width of an aspiration window. */
+    private static final int ASPIRATION_WINDOW = PIECEWORTH;
+    /** Factor by which an aspiration window widens when the value falls
+     *  outside it. */
+    private static final int ASPIRATION_GROWTH = 4;
+    /** Futility pruning applies at depths up to this. */
+    private static final int FUTILITY_DEPTH = 2;
+    /** Null-move cutoffs at this depth or more are verified. */
+    private static final int NULL_VERIFY_DEPTH = 6;
+    /** Number of distinct move codes (see Move.code()). */
+    private static final int MOVE_CODES = NUM_SQUARES * NUM_SQUARES;
+    /** Ordering scores for the kinds of move searched ahead of quiet
+     *  moves, from first to last: the move from the transposition table,
+     *  captures, king moves to or toward the edge, killers, and the
+     *  counter-move to the previous move.  King moves count as king moves
+     *  if they reach the edge or an open line to it (forks first), and
+     *  BLACK moves if they block an open line.  Other moves are ordered by
+     *  their history scores, which stay below HISTORY_LIMIT. */
+    private static final int
+        TABLE_ORDER = 1 << 30, CAPTURE_ORDER = 1 << 28, KING_ORDER = 1 << 27,
+        KILLER_ORDER = 1 << 26, COUNTER_ORDER = 1 << 25,
+        HISTORY_LIMIT = 1 << 24;
 
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
      */
     AI() {
-        this(null, null);
+        this(new SearchOptions());
+    }
+
+    /**
+     * A new AI template whose players search according to OPTIONS.
+     */
+    AI(SearchOptions options) {
+        this(null, null, options);
     }
 
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, new SearchOptions());
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, searching
+     * according to OPTIONS.
+     */
+    AI(Piece piece, Controller controller, SearchOptions options) {
         super(piece, controller);
+        _options = options;
+    }
+
+    /**
+     * A new helper searching according to OPTIONS and sharing TABLE
+     * with the AI it helps.
+     */
+    private AI(SearchOptions options, TranspositionTable table) {
+        this(null, null, options);
+        _table = table;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, _options);
     }
 
     @Override
     String myMove() {
         Move move = findMove();
+        if (_options.stats() && _stats.nodes() > 0) {
+            _controller.reportNote("%s", _stats);
+            _controller.logComment("%s", _stats);
+        }
+        if (move == null) {
+            return null;
+        }
         _controller.reportMove(move);
         return move.toString();
     }
@@ -63,109 +147,1050 @@ class AI extends Player {
     }
 
     /**
-     * Return a move for me from the current position, assuming there
-     * is a move.
+     * If my options allow, start searching on a background thread while
+     * my opponent chooses a move, filling my transposition table with
+     * results that my next search will find.  If the last move was the
+     * one my last search chose, I search the position after the reply
+     * that search expected; otherwise I search the current position
+     * from my opponent's side, which covers all likely replies.
      */
-    private Move findMove() {
+    @Override
+    void startPondering() {
         Board b = new Board(board());
-        _lastFoundMove = null;
-        if (myPiece() == BLACK) {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
+        if (!_options.ponder() || _ponderer != null || b.winner() != null) {
+            return;
+        }
+        int[] pv = _principalVariation;
+        if (pv.length > 1 && b.lastMove() == pv[0]) {
+            Move reply = Move.mv(pv[1]);
+            if (reply != null && b.isLegal(reply)) {
+                b.makeMove(reply);
+                if (b.winner() != null) {
+                    b.undo();
+                }
+            }
+        }
+        if (_table == null) {
+            _table = new TranspositionTable(_options.hashSize());
+        }
+        _table.newSearch();
+        _stopped = false;
+        _deadline = Long.MAX_VALUE;
+        _ponderer = new Thread(() -> {
+            Thread[] helpers = startHelpers(b);
+            iterate(b, 1, Long.MAX_VALUE);
+            stopHelpers(helpers);
+        });
+        _ponderer.setDaemon(true);
+        _ponderer.start();
+    }
+
+    @Override
+    void stopPondering() {
+        if (_ponderer != null) {
+            _stopped = true;
+            try {
+                _ponderer.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _ponderer = null;
+            _stopped = false;
         }
-        return _lastFoundMove;
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return a move for me from the current position, or null if I have
+     * no legal move.
      */
-    private Move _lastFoundMove;
+    private Move findMove() {
+        return findMove(new Board(board()));
+    }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Return a move for the side to move on BOARD, or null if it has no
+     * legal moves.  Searches to successively greater depths until the time
+     * allotted by allotTime runs out (or to the depth set in my options),
+     * returning the move chosen by the last search that finished.  Each
+     * search after the first few starts with a narrow window around the
+     * score of the one before.  BOARD is restored before returning.
+     *
+     * With more than one thread in my options, helper threads search
+     * copies of BOARD at the same time, starting at staggered depths.
+     * They share my transposition table, so each thread finds positions
+     * the others have already searched, and the best move is the one I
+     * find on this thread.
+     *
+     * If my options include an opening book with a move for BOARD, I play
+     * that move without searching.
      */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
+    Move findMove(Board b) {
+        stopPondering();
+        OpeningBook book = _options.book();
+        int bookMove = book == null ? 0 : book.move(b);
+        _stats.clear();
+        if (bookMove != 0) {
+            _nodes = 0;
+            _principalVariation = new int[] { bookMove };
+            return Move.mv(bookMove);
         }
-        if (sense == 1) {
-            int bestsofar = Integer.MIN_VALUE;
-            List<Move> white = board.legalMoves(WHITE);
-            int a = white.size();
-            for (Move whitemove : white) {
-                board.makeMove(whitemove);
-                int response = findMove(board, depth - 1,
-                        false, -1, alpha, beta);
-                board.undo();
-                if (response >= bestsofar) {
-                    bestsofar = response;
-                    if (saveMove) {
-                        _lastFoundMove = whitemove;
+        long start = System.currentTimeMillis();
+        long allotted = allotTime(b);
+        if (_table == null) {
+            _table = new TranspositionTable(_options.hashSize());
+        }
+        _table.newSearch();
+        _deadline = start + allotted;
+        synchronized (_workers) {
+            for (AI worker : _workers) {
+                worker.clearCounts();
+            }
+        }
+        Thread[] helpers = startHelpers(b);
+        Move best = iterate(b, 1, start + allotted / 2);
+        stopHelpers(helpers);
+        long time = System.currentTimeMillis() - start;
+        _gameTimeUsed += time;
+        collectStats(time);
+        return best;
+    }
+
+    /** Search BOARD to successively greater depths starting at FIRSTDEPTH,
+     *  as for findMove, until the search is stopped, finds a win, or
+     *  finishes a depth after time SOFTDEADLINE.  Return the best move
+     *  from the last depth finished, or null if none finished or the side
+     *  to move has no legal moves. */
+    private Move iterate(Board b, int firstDepth, long softDeadline) {
+        int sense = b.turn() == BLACK ? -1 : 1;
+        Move best = null;
+        newOrdering();
+        _rootMoveCount = b.moveCount();
+        _aborted = false;
+        clearCounts();
+        _principalVariation = new int[0];
+        if (b.legalMoves(b.turn(), _moves[0]) == 0) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        int lastDepth = maxDepth(b);
+        if (_options.depth() > 0) {
+            lastDepth = Math.min(lastDepth, _options.depth());
+        }
+        int score = 0;
+        for (int depth = firstDepth; depth <= lastDepth; depth += 1) {
+            _abortable = best != null;
+            int result = searchRoot(b, depth, sense, score);
+            if (_aborted) {
+                break;
+            }
+            score = result;
+            _stats.addIteration(depth, nodes(),
+                                System.currentTimeMillis() - start);
+            _principalVariation = Arrays.copyOf(_pv[0], _pvLength[0]);
+            best = Move.mv(_principalVariation[0]);
+            if (Math.abs(score) > WILL_WIN_VALUE
+                || System.currentTimeMillis() > softDeadline) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /** Start and return threads running my helpers (one fewer than the
+     *  number of threads in my options), each searching its own copy of
+     *  BOARD without a time limit until stopHelpers.  Helpers alternate
+     *  between starting at depth 1 and depth 2, so that they are usually
+     *  a depth apart from each other and from me. */
+    private Thread[] startHelpers(Board board) {
+        int n = _options.splitRoot() ? 0 : _options.threads() - 1;
+        if (_helpers.length != n) {
+            _helpers = new AI[n];
+            for (int k = 0; k < n; k += 1) {
+                _helpers[k] = new AI(_options, _table);
+            }
+        }
+        Thread[] threads = new Thread[n];
+        for (int k = 0; k < n; k += 1) {
+            AI helper = _helpers[k];
+            Board copy = new Board(board);
+            int firstDepth = 2 - k % 2;
+            helper._stopped = false;
+            helper._deadline = Long.MAX_VALUE;
+            threads[k] = new Thread(() -> {
+                helper.iterate(copy, firstDepth, Long.MAX_VALUE);
+            });
+            threads[k].setDaemon(true);
+            threads[k].start();
+        }
+        return threads;
+    }
+
+    /** Stop my helpers and wait for THREADS, which are running them, to
+     *  finish. */
+    private void stopHelpers(Thread[] threads) {
+        for (AI helper : _helpers) {
+            helper._stopped = true;
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Return the number of nodes visited by the last call to findMove,
+     *  on all threads. */
+    long nodes() {
+        long result = _nodes;
+        for (AI helper : _helpers) {
+            result += helper._nodes;
+        }
+        synchronized (_workers) {
+            for (AI worker : _workers) {
+                result += worker._nodes;
+            }
+        }
+        return result;
+    }
+
+    /** Return statistics on the last call to findMove, on all threads.
+     *  They are empty if it played a move from the opening book. */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /** Reset the counts of the current search on this thread. */
+    private void clearCounts() {
+        _nodes = _qnodes = _cutoffs = _firstMoveCutoffs = 0;
+        _probes = _hits = 0;
+    }
+
+    /** Add my counts and those of my helpers and workers to _stats, and
+     *  set its time to TIME milliseconds. */
+    private void collectStats(long time) {
+        _stats.setTime(time);
+        _stats.add(_nodes, _qnodes, _cutoffs, _firstMoveCutoffs,
+                   _probes, _hits);
+        for (AI helper : _helpers) {
+            _stats.add(helper._nodes, helper._qnodes, helper._cutoffs,
+                       helper._firstMoveCutoffs, helper._probes,
+                       helper._hits);
+        }
+        synchronized (_workers) {
+            for (AI worker : _workers) {
+                _stats.add(worker._nodes, worker._qnodes, worker._cutoffs,
+                           worker._firstMoveCutoffs, worker._probes,
+                           worker._hits);
+            }
+        }
+    }
+
+    /** Return the principal variation found by the last search that
+     *  finished: the line of play, starting with the move chosen, that
+     *  the search expects from both sides. */
+    List<Move> principalVariation() {
+        ArrayList<Move> result = new ArrayList<>();
+        for (int move : _principalVariation) {
+            result.add(Move.mv(move));
+        }
+        return result;
+    }
+
+    /** Return the time in milliseconds to spend choosing a move on BOARD:
+     *  the per-move budget, or less if the game-time budget must also
+     *  cover my remaining moves before BOARD's move limit. */
+    long allotTime(Board board) {
+        if (board.moveCount() < _lastMoveCount) {
+            _gameTimeUsed = 0;
+        }
+        _lastMoveCount = board.moveCount();
+        long allotted = _options.moveTime();
+        if (_options.gameTime() > 0) {
+            int movesToGo = DEFAULT_MOVES_TO_GO;
+            if (board.moveLimit() != Integer.MAX_VALUE) {
+                movesToGo = Math.max(1, (board.moveLimit()
+                                         - board.moveCount()) / 2 + 1);
+            }
+            long left = Math.max(0, _options.gameTime() - _gameTimeUsed);
+            allotted = Math.min(allotted, left / movesToGo);
+        }
+        return Math.max(1, allotted);
+    }
+
+    /** Return true iff the current search has run out of time or been
+     *  stopped, in which case its results must be discarded.  Checks the
+     *  clock only every CLOCK_CHECK_INTERVAL calls. */
+    private boolean outOfTime() {
+        _nodes += 1;
+        if (_nodes % CLOCK_CHECK_INTERVAL == 0
+            && (_stopped
+                || _abortable && System.currentTimeMillis() > _deadline)) {
+            _aborted = true;
+        }
+        return _aborted;
+    }
+
+    /** Return the value of BOARD, PLY plies below the root, to the side
+     *  to move according to the tablebases in my options, or 0 if they
+     *  do not show that either side can force a win. */
+    private int probeTablebase(Board board, int ply) {
+        Tablebase tablebase = _options.tablebase();
+        if (tablebase == null
+            || board.pieceCount(WHITE) + board.pieceCount(BLACK)
+               > Tablebase.MAX_PIECES + 1) {
+            return 0;
+        }
+        int result = tablebase.probe(board);
+        if (result == 0) {
+            return 0;
+        }
+        int score = WINNING_VALUE
+            - Math.min(ply + Tablebase.distance(result), MAX_PLY);
+        return Tablebase.isWin(result) ? score : -score;
+    }
+
+    /** Return the score of BOARD, on which WINNER has won, PLY plies below
+     *  the root. */
+    private static int winScore(Piece winner, int ply) {
+        int score = WINNING_VALUE - ply;
+        return winner.side() == WHITE ? score : -score;
+    }
+
+    /** The principal variation, as move codes, found by the last search
+     *  that finished. */
+    private int[] _principalVariation = new int[0];
+    /** Principal variations under construction: _pv[k][k .. _pvLength[k]-1]
+     *  is the best line found so far from the position k plies below the
+     *  root. */
+    private final int[][] _pv = new int[MAX_PLY][MAX_PLY];
+    /** See _pv. */
+    private final int[] _pvLength = new int[MAX_PLY];
+
+    /** Analyzes the king's escape routes for staticScore and move
+     *  ordering. */
+    private final KingEscape _escape = new KingEscape();
+
+    /** _noNull[k] is true iff a null move may not be tried k plies below
+     *  the root (because the last move was one, or a null-move cutoff is
+     *  being verified there). */
+    private final boolean[] _noNull = new boolean[MAX_PLY];
+
+    /** Move buffers for the search: _moves[k] receives the codes of the
+     *  moves generated k plies below the root. */
+    private final int[][] _moves = new int[MAX_PLY][Board.MAX_MOVES];
+
+    /** Ordering scores for the search: _scores[k][i] belongs to the move
+     *  _moves[k][i]. */
+    private final int[][] _scores = new int[MAX_PLY][Board.MAX_MOVES];
+    /** _killers[k] holds the two most recent quiet moves that caused a
+     *  cutoff k plies below the root. */
+    private final int[][] _killers = new int[MAX_PLY][2];
+    /** _history[s][m] measures how often the quiet move with code m by
+     *  side s (0 for white, 1 for black) has caused cutoffs. */
+    private final int[][] _history = new int[2][MOVE_CODES];
+    /** _counters[m] is the quiet move that last refuted the move with
+     *  code m. */
+    private final int[] _counters = new int[MOVE_CODES];
+
+    /** The moveCount() of the board at the root of the current search. */
+    private int _rootMoveCount;
+
+    /** My search settings. */
+    private final SearchOptions _options;
+
+    /** Results of earlier searches, kept from move to move (allocated on
+     *  first use). */
+    private TranspositionTable _table;
+
+    /** Time (System.currentTimeMillis()) at which the current search must
+     *  stop. */
+    private long _deadline;
+    /** True iff the current search may be stopped by the clock. */
+    private boolean _abortable;
+    /** True iff the current search ran out of time. */
+    private boolean _aborted;
+    /** True iff I am a helper, or pondering, and my search should
+     *  stop. */
+    private volatile boolean _stopped;
+    /** The thread on which I am pondering, or null if I am not. */
+    private Thread _ponderer;
+    /** Helpers for my searches when there is more than one thread. */
+    private AI[] _helpers = new AI[0];
+    /** Threads for searchSplit (created on first use). */
+    private ForkJoinPool _pool;
+    /** Workers for searchSplit, one for each thread of _pool. */
+    private final List<AI> _workers =
+        Collections.synchronizedList(new ArrayList<>());
+    /** The worker for searchSplit belonging to the current thread. */
+    private final ThreadLocal<AI> _worker =
+        ThreadLocal.withInitial(this::newWorker);
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** Counts for the current search on this thread (see SearchStats):
+     *  quiescence nodes, beta cutoffs, cutoffs by the first move,
+     *  transposition-table probes, and probes that found an entry. */
+    private long _qnodes, _cutoffs, _firstMoveCutoffs, _probes, _hits;
+    /** Statistics on the last call to findMove. */
+    private final SearchStats _stats = new SearchStats();
+
+    /** Milliseconds spent searching so far in the current game. */
+    private long _gameTimeUsed;
+    /** The moveCount() of the board at my last move, used to notice a new
+     *  game. */
+    private int _lastMoveCount;
+
+    /** Return the value of BOARD to the side to move, SENSE (1 for
+     *  white, -1 for black), searched to DEPTH.  GUESS is the value found
+     *  by the search one ply shallower.  The search starts with a window
+     *  ASPIRATION_WINDOW each side of GUESS and widens the window on the
+     *  side where the value falls outside it until the value is exact. */
+    private int searchRoot(Board board, int depth, int sense, int guess) {
+        if (depth < ASPIRATION_DEPTH || Math.abs(guess) > WILL_WIN_VALUE) {
+            return searchTop(board, depth, sense, -INFTY, INFTY);
+        }
+        long lowDelta = ASPIRATION_WINDOW, highDelta = ASPIRATION_WINDOW;
+        while (true) {
+            int alpha = (int) Math.max(-INFTY, guess - lowDelta),
+                beta = (int) Math.min(INFTY, guess + highDelta);
+            int score = searchTop(board, depth, sense, alpha, beta);
+            if (_aborted) {
+                return 0;
+            } else if (score <= alpha && alpha > -INFTY) {
+                lowDelta *= ASPIRATION_GROWTH;
+            } else if (score >= beta && beta < INFTY) {
+                highDelta *= ASPIRATION_GROWTH;
+            } else {
+                return score;
+            }
+        }
+    }
+
+    /** Return search(BOARD, DEPTH, SENSE, ALPHA, BETA) for the root
+     *  position BOARD, dividing the root moves among threads with
+     *  searchSplit if my options ask for that. */
+    private int searchTop(Board board, int depth, int sense,
+                          int alpha, int beta) {
+        if (_options.splitRoot() && _options.threads() > 1 && depth > 1) {
+            return searchSplit(board, depth, sense, alpha, beta);
+        }
+        return search(board, depth, sense, alpha, beta);
+    }
+
+    /**
+     * Return search(BOARD, DEPTH, SENSE, ALPHA, BETA) for the root
+     * position BOARD, recording the principal variation in _pv, by
+     * splitting the root moves among the threads of a ForkJoinPool.
+     * The first move in order is searched here first ("young brothers
+     * wait"), since it usually sets the bound that refutes the others.
+     * Each of the rest is then searched by a RootTask on its own copy of
+     * BOARD, against an alpha bound that the tasks share and raise as
+     * they go.  The bound remembers which move set it, and a move
+     * earlier in order that ties it counts as beating it, so the best
+     * move is the earliest of those with the highest value, whichever
+     * task finishes first.  Its score and the rest of the principal
+     * variation may vary: the tasks share my transposition table, so
+     * what each one finds depends on how far the others have got.
+     */
+    private int searchSplit(Board board, int depth, int sense,
+                            int alpha, int beta) {
+        _pvLength[0] = 0;
+        int side = sense == 1 ? 0 : 1;
+        int[] moves = _moves[0];
+        int n = board.legalMoves(sense == 1 ? WHITE : BLACK, moves);
+        if (n == 0) {
+            return sense * winScore(sense == 1 ? BLACK : WHITE, 0);
+        }
+        long key = board.hash();
+        scoreMoves(board, moves, n,
+                   TranspositionTable.move(_table.probe(key)), side, 0);
+        for (int i = 0; i < n; i += 1) {
+            nextMove(moves, _scores[0], i, n);
+        }
+        int alpha0 = alpha;
+        board.makeMove(moves[0]);
+        int best = -search(board, depth - 1, -sense, -beta, -alpha);
+        board.undo();
+        if (_aborted) {
+            return 0;
+        }
+        int bestMove = moves[0];
+        if (best > alpha) {
+            alpha = best;
+            updatePV(0, bestMove);
+        }
+        if (alpha < beta && n > 1) {
+            AtomicLong sharedAlpha = new AtomicLong(
+                rootBound(alpha, best > alpha0 ? 0 : -1));
+            RootTask[] tasks = new RootTask[n - 1];
+            for (int i = 1; i < n; i += 1) {
+                tasks[i - 1] = new RootTask(board, moves[i], i, depth,
+                                            sense, sharedAlpha, beta);
+                pool().execute(tasks[i - 1]);
+            }
+            for (RootTask task : tasks) {
+                task.join();
+            }
+            for (RootTask task : tasks) {
+                if (task._stopped) {
+                    _aborted = true;
+                    return 0;
+                }
+                if (task._improved && task._score > best) {
+                    best = task._score;
+                    bestMove = task._move;
+                    if (best > alpha) {
+                        alpha = best;
+                        _pv[0][0] = bestMove;
+                        System.arraycopy(task._pv, 0, _pv[0], 1,
+                                         task._pv.length);
+                        _pvLength[0] = 1 + task._pv.length;
                     }
-                    alpha = Math.max(alpha, response);
+                }
+            }
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, bestMove, depth, bound, toTable(best, 0));
+        return best;
+    }
+
+    /** Return the pool of threads for searchSplit, creating it if
+     *  needed. */
+    private ForkJoinPool pool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(_options.threads());
+        }
+        return _pool;
+    }
+
+    /** Return the alpha bound shared by searchSplit's tasks when it was
+     *  set by the root move numbered INDEX in move order (-1 for none),
+     *  whose value is SCORE.  Bounds compare by score, then with earlier
+     *  moves greater. */
+    private static long rootBound(int score, int index) {
+        return (long) score << 32 | (Board.MAX_MOVES - index);
+    }
+
+    /** Return the number of the root move that set BOUND, as for
+     *  rootBound. */
+    private static int rootBoundHolder(long bound) {
+        return Board.MAX_MOVES - (int) bound;
+    }
+
+    /** A search, for searchSplit, of one root move on a worker thread,
+     *  using that thread's worker AI. */
+    private class RootTask extends RecursiveAction {
+
+        /** A task to search the root move MOVE, which is #INDEX in move
+         *  order, on a copy of ROOT to DEPTH plies, with SENSE to move at
+         *  ROOT, raising ALPHA (see rootBound) if MOVE beats it and using the
+         *  window ALPHA, BETA otherwise as for search. */
+        RootTask(Board root, int move, int index, int depth, int sense,
+                 AtomicLong alpha, int beta) {
+            _root = root;
+            _move = move;
+            _index = index;
+            _depth = depth;
+            _sense = sense;
+            _alpha = alpha;
+            _beta = beta;
+        }
+
+        @Override
+        protected void compute() {
+            AI worker = _worker.get();
+            Board board = new Board(_root);
+            worker.startWork(AI.this, _root.moveCount());
+            board.makeMove(_move);
+            long bound = _alpha.get();
+            int alpha = (int) (bound >> 32);
+            if (_index < rootBoundHolder(bound)) {
+                alpha -= 1;
+            }
+            _score = -worker.search(board, _depth - 1, -_sense,
+                                    -alpha - 1, -alpha);
+            if (!worker._aborted && _score > alpha && _score < _beta) {
+                _score = -worker.search(board, _depth - 1, -_sense,
+                                        -_beta, -alpha);
+            }
+            _stopped = worker._aborted;
+            _improved = _score > alpha;
+            if (_improved) {
+                _alpha.accumulateAndGet(rootBound(_score, _index),
+                                        Math::max);
+            }
+            _pv = Arrays.copyOfRange(worker._pv[1], 1, worker._pvLength[1]);
+        }
+
+        /** The root position, which is not changed while tasks run. */
+        private final Board _root;
+        /** The root move I search, its number in move order, and the
+         *  search depth from the root. */
+        private final int _move, _index, _depth;
+        /** 1 if white is to move at the root, else -1. */
+        private final int _sense;
+        /** The alpha bound shared by all tasks for the same root (see
+         *  rootBound). */
+        private final AtomicLong _alpha;
+        /** The beta bound for the root. */
+        private final int _beta;
+        /** The value of _move, as for search. */
+        private int _score;
+        /** True iff _score beat the shared alpha bound (and so is exact or
+         *  at least _beta). */
+        private boolean _improved;
+        /** True iff the search ran out of time. */
+        private boolean _stopped;
+        /** The principal variation following _move. */
+        private int[] _pv;
+    }
+
+    /** Return a new worker for searchSplit, sharing my transposition
+     *  table, and add it to _workers. */
+    private AI newWorker() {
+        AI worker = new AI(_options, _table);
+        _workers.add(worker);
+        return worker;
+    }
+
+    /** Prepare me, a worker for searchSplit, to search a root move for
+     *  MASTER, whose root has move count ROOTMOVECOUNT.  My move-ordering
+     *  tables are cleared so that the result depends only on the root
+     *  move and not on what else I searched before. */
+    private void startWork(AI master, int rootMoveCount) {
+        _rootMoveCount = rootMoveCount;
+        _deadline = master._deadline;
+        _abortable = master._abortable;
+        _aborted = false;
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = 0;
+        }
+        for (int[] h : _history) {
+            Arrays.fill(h, 0);
+        }
+        Arrays.fill(_counters, 0);
+    }
+
+    /**
+     * Return the value of BOARD to the side to move, SENSE (1 for white,
+     * -1 for black), searched to DEPTH plies, if it lies between ALPHA
+     * and BETA.  Otherwise, return a value <= ALPHA (an upper bound) or
+     * >= BETA (a lower bound).  At depth 0 the value comes from
+     * quiesce.  Records the principal variation from BOARD in _pv when
+     * the value lies between ALPHA and BETA.
+     *
+     * The first move is searched with the full window and the rest with
+     * a null window around ALPHA, which only shows whether they are
+     * better than the first; one that is gets searched again properly.
+     *
+     * Outside the principal variation, and unless the king is under
+     * threat, the search is selective as far as my options allow: it
+     * tries a null move (tryNullMove) when the static value is at least
+     * BETA, skips quiet moves near the leaves when even the static value
+     * plus the futility margin cannot reach ALPHA, and searches quiet
+     * moves late in the move order to reduced depth, searching them
+     * again fully only if they turn out to beat ALPHA.
+     *
+     * Below the root, positions that the endgame tablebases in my options
+     * show to be won or lost get their exact values without searching.
+     */
+    private int search(Board board, int depth, int sense,
+                       int alpha, int beta) {
+        int ply = board.moveCount() - _rootMoveCount;
+        _pvLength[ply] = ply;
+        if (board.winner() != null) {
+            return sense * winScore(board.winner(), ply);
+        }
+        if (depth <= 0) {
+            return quiesce(board, sense, alpha, beta);
+        }
+        if (outOfTime()) {
+            return sense * staticScore(board);
+        }
+        boolean pvNode = beta > alpha + 1;
+        long key = board.hash();
+        long entry = _table.probe(key);
+        _probes += 1;
+        if (entry != 0) {
+            _hits += 1;
+        }
+        if (entry != 0 && !pvNode
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = fromTable(TranspositionTable.score(entry), ply);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                if (score >= beta) {
+                    return score;
+                }
+                break;
+            default:
+                if (score <= alpha) {
+                    return score;
+                }
+                break;
+            }
+        }
+        int known = ply > 0 ? probeTablebase(board, ply) : 0;
+        if (known != 0) {
+            return known;
+        }
+        int[] moves = _moves[ply];
+        int n = board.legalMoves(sense == 1 ? WHITE : BLACK, moves);
+        if (n == 0) {
+            return sense * winScore(sense == 1 ? BLACK : WHITE, ply);
+        }
+        boolean selective = _options.nullMove() || _options.futility()
+            || _options.lateMoveReduction();
+        boolean threatened = selective && threatened(board, sense);
+        boolean prune = selective && !pvNode && !threatened
+            && Math.abs(beta) < WILL_WIN_VALUE;
+        int eval = prune ? sense * staticScore(board) : 0;
+        if (prune && eval >= beta && tryNullMove(board, depth, sense, beta)) {
+            return beta;
+        }
+        if (_aborted) {
+            return 0;
+        }
+        int futilityValue = eval + _options.futilityMargin() * depth;
+        boolean futile = prune && _options.futility()
+            && depth <= FUTILITY_DEPTH && futilityValue <= alpha;
+        int side = sense == 1 ? 0 : 1;
+        scoreMoves(board, moves, n, TranspositionTable.move(entry),
+                   side, ply);
+        int alpha0 = alpha;
+        int best = -INFTY, bestMove = 0;
+        for (int i = 0; i < n; i += 1) {
+            int move = nextMove(moves, _scores[ply], i, n);
+            boolean quiet = _scores[ply][i] < COUNTER_ORDER;
+            if (futile && quiet && i > 0) {
+                best = Math.max(best, futilityValue);
+                continue;
+            }
+            board.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -search(board, depth - 1, -sense, -beta, -alpha);
+            } else {
+                int reduction = 0;
+                if (quiet && !threatened && _options.lateMoveReduction()
+                    && depth >= _options.lateMoveDepth()
+                    && i >= _options.lateMoveIndex()) {
+                    reduction = Math.min(depth - 1,
+                                         i >= 2 * _options.lateMoveIndex()
+                                         ? 2 : 1);
+                }
+                score = -search(board, depth - 1 - reduction, -sense,
+                                -alpha - 1, -alpha);
+                if (reduction > 0 && score > alpha) {
+                    score = -search(board, depth - 1, -sense,
+                                    -alpha - 1, -alpha);
+                }
+                if (score > alpha && score < beta) {
+                    score = -search(board, depth - 1, -sense,
+                                    -beta, -alpha);
+                }
+            }
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePV(ply, move);
                     if (alpha >= beta) {
+                        _cutoffs += 1;
+                        if (i == 0) {
+                            _firstMoveCutoffs += 1;
+                        }
+                        noteCutoff(board, move, side, ply, depth);
                         break;
                     }
                 }
             }
-            return bestsofar;
-        } else {
-            int bestsofar = Integer.MAX_VALUE;
-            List<Move> black = board.legalMoves(BLACK);
-            for (Move blackmove : black) {
-                board.makeMove(blackmove);
-                int response = findMove(board, depth - 1,
-                        false, 1, alpha, beta);
-                board.undo();
-                if (response <= bestsofar) {
-                    bestsofar = response;
-                    if (saveMove) {
-                        _lastFoundMove = blackmove;
-                    }
-                    beta = Math.min(beta, response);
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, bestMove, depth, bound, toTable(best, ply));
+        return best;
+    }
+
+    /** Return the value of BOARD to the side to move, SENSE (1 for white,
+     *  -1 for black), as for search, looking only at captures and king
+     *  moves to the edge.  The side to move may instead "stand pat" on
+     *  the static value, unless that would ignore a threat: a king with
+     *  an open line to the edge when BLACK is to move, or a king that
+     *  BLACK could capture when WHITE is to move.  In those positions all
+     *  moves are searched one ply further.  A king with two open lines
+     *  is as good as escaped unless BLACK can capture it. */
+    private int quiesce(Board board, int sense, int alpha, int beta) {
+        int ply = board.moveCount() - _rootMoveCount;
+        if (board.winner() != null) {
+            return sense * winScore(board.winner(), ply);
+        }
+        _qnodes += 1;
+        if (outOfTime() || ply >= MAX_PLY - 2) {
+            return sense * staticScore(board);
+        }
+        int known = probeTablebase(board, ply);
+        if (known != 0) {
+            return known;
+        }
+        Square king = board.kingPosition();
+        int lines = king == null ? 0 : board.openLines(king.index(), -1);
+        if (sense == 1 && lines > 0) {
+            return winScore(WHITE, ply + 1);
+        }
+        if (sense == 1 ? board.kingThreatened() : lines == 1) {
+            return search(board, 1, sense, alpha, beta);
+        }
+        int best = lines > 1 ? -winScore(WHITE, ply + 2)
+            : sense * staticScore(board);
+        if (best >= beta) {
+            return best;
+        }
+        alpha = Math.max(alpha, best);
+        int[] moves = _moves[ply];
+        int n = board.captureMoves(sense == 1 ? WHITE : BLACK, moves);
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            int score = -quiesce(board, -sense, -beta, -alpha);
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
                     if (alpha >= beta) {
                         break;
                     }
                 }
             }
-            return bestsofar;
         }
+        return best;
+    }
+
+    /** Return true iff the side to move on BOARD, SENSE (1 for white, -1
+     *  for black), faces a threat that passing or a quiet move might
+     *  ignore: a king that BLACK could capture, or, for BLACK, a king
+     *  with an open line to the edge. */
+    private static boolean threatened(Board board, int sense) {
+        if (sense == 1) {
+            return board.kingThreatened();
+        }
+        Square king = board.kingPosition();
+        return king != null && board.openLines(king.index(), -1) > 0;
+    }
+
+    /** Return true iff the side to move on BOARD, SENSE, can be shown to
+     *  have a position worth at least BETA when searched to DEPTH, by
+     *  letting the opponent move twice in a row (a null move) in a
+     *  shallower search.  If even that fails to bring the value below
+     *  BETA, the position is almost surely good enough.  The test is
+     *  skipped if the side to move has few pieces, where passing may be
+     *  better than any move, and after another null move.  At depths of
+     *  NULL_VERIFY_DEPTH or more, a cutoff is confirmed by an ordinary
+     *  search reduced by the same amount. */
+    private boolean tryNullMove(Board board, int depth, int sense,
+                                int beta) {
+        int ply = board.moveCount() - _rootMoveCount;
+        int r = _options.nullMoveReduction();
+        if (!_options.nullMove() || _noNull[ply] || depth <= r
+            || board.pieceCount(sense == 1 ? WHITE : BLACK)
+               < _options.nullMoveMinPieces()) {
+            return false;
+        }
+        board.makeNullMove();
+        _noNull[ply + 1] = true;
+        int score = -search(board, depth - 1 - r, -sense, -beta, -beta + 1);
+        _noNull[ply + 1] = false;
+        board.undoNullMove();
+        if (_aborted || score < beta) {
+            return false;
+        } else if (depth < NULL_VERIFY_DEPTH) {
+            return true;
+        }
+        _noNull[ply] = true;
+        score = search(board, depth - r, sense, beta - 1, beta);
+        _noNull[ply] = false;
+        return !_aborted && score >= beta;
+    }
+
+    /** Make the principal variation PLY plies below the root consist of
+     *  MOVE followed by the one just found for the position after it. */
+    private void updatePV(int ply, int move) {
+        int[] pv = _pv[ply];
+        pv[ply] = move;
+        int end = ply + 1;
+        if (ply + 1 < MAX_PLY) {
+            end = _pvLength[ply + 1];
+            System.arraycopy(_pv[ply + 1], ply + 1, pv, ply + 1,
+                             end - ply - 1);
+        }
+        _pvLength[ply] = end;
+    }
+
+    /** Fill _scores[PLY] with ordering scores for the N moves MOVES by
+     *  SIDE (0 for white, 1 for black) on BOARD, PLY plies below the root,
+     *  where TABLEMOVE is the best move recorded in the transposition
+     *  table (or 0). */
+    private void scoreMoves(Board board, int[] moves, int n, int tableMove,
+                            int side, int ply) {
+        int[] scores = _scores[ply];
+        int[] killers = _killers[ply];
+        int counter = _counters[board.lastMove()];
+        int[] history = _history[side];
+        boolean blocking = side == 1 && _escape.openLines(board) > 0;
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            int from = Move.fromIndex(move), to = Move.toIndex(move);
+            if (move == tableMove) {
+                scores[i] = TABLE_ORDER;
+            } else if (board.isCapture(move)) {
+                scores[i] = CAPTURE_ORDER;
+            } else if (board.get(from) == KING) {
+                int lines = Square.sq(to).isEdge() ? 2
+                    : board.openLines(to, from);
+                scores[i] = lines == 0 ? history[move]
+                    : KING_ORDER + lines;
+            } else if (blocking && _escape.blocks(board, to)) {
+                scores[i] = KING_ORDER;
+            } else if (move == killers[0] || move == killers[1]) {
+                scores[i] = KILLER_ORDER;
+            } else if (move == counter) {
+                scores[i] = COUNTER_ORDER;
+            } else {
+                scores[i] = history[move];
+            }
+        }
+    }
+
+    /** Swap the move with the highest score among MOVES[I .. N-1] (whose
+     *  scores are SCORES[I .. N-1]) into MOVES[I], and return it.  Moves
+     *  are thus sorted only as far as the search gets before a cutoff. */
+    private static int nextMove(int[] moves, int[] scores, int i, int n) {
+        int best = i;
+        for (int j = i + 1; j < n; j += 1) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best], score = scores[best];
+        moves[best] = moves[i];
+        scores[best] = scores[i];
+        moves[i] = move;
+        scores[i] = score;
+        return move;
+    }
+
+    /** Record that MOVE by SIDE caused a cutoff on BOARD, PLY plies below
+     *  the root with DEPTH plies left to search, updating the killer,
+     *  counter-move, and history tables if it is a quiet move. */
+    private void noteCutoff(Board board, int move, int side, int ply,
+                            int depth) {
+        if (board.isCapture(move)) {
+            return;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        _counters[board.lastMove()] = move;
+        int[] history = _history[side];
+        history[move] += depth * depth;
+        if (history[move] >= HISTORY_LIMIT) {
+            for (int[] h : _history) {
+                for (int m = 0; m < MOVE_CODES; m += 1) {
+                    h[m] /= 2;
+                }
+            }
+        }
+    }
+
+    /** Prepare the move-ordering tables for a new search: killers are
+     *  forgotten, and history scores from earlier searches count for
+     *  less. */
+    private void newOrdering() {
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = 0;
+        }
+        for (int[] h : _history) {
+            for (int m = 0; m < MOVE_CODES; m += 1) {
+                h[m] /= 2;
+            }
+        }
+    }
+
+    /** Return SCORE, found PLY plies below the root, in the form stored
+     *  in the transposition table: wins are measured from the position
+     *  rather than from the root. */
+    private static int toTable(int score, int ply) {
+        if (score > WILL_WIN_VALUE) {
+            return score + ply;
+        } else if (score < -WILL_WIN_VALUE) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /** Return the score represented by SCORE, taken from the
+     *  transposition table PLY plies below the root (see toTable). */
+    private static int fromTable(int score, int ply) {
+        if (score > WILL_WIN_VALUE) {
+            return score - ply;
+        } else if (score < -WILL_WIN_VALUE) {
+            return score + ply;
+        }
+        return score;
     }
 
     /** @param board
      * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * based on characteristics of BOARD: there is no point in looking
+     * past the move that exceeds BOARD's move limit.
      */
-    private static int maxDepth(Board board) {
-        return 1;
+    static int maxDepth(Board board) {
+        long toLimit = (long) board.moveLimit() - board.moveCount() + 2;
+        return (int) Math.max(1, Math.min(MAX_PLY - 1, toLimit));
     }
 
     /** @param board
-     * Return a heuristic value for BOARD.
+     * Return a heuristic value for BOARD.  Every term is kept up to date
+     * by BOARD as pieces move, so this costs only a few additions: the
+     * difference in material, the king's distance from the edge, the
+     * difference in mobility, and the number of WHITE pieces guarding
+     * the throne.  To these is added a bonus for a king that is few
+     * moves from escaping (see KingEscape), which is largest for a king
+     * with two open lines to the edge.
      */
-    private int staticScore(Board board) {
-        HashSet<Square> white = board.pieceLocations(WHITE);
-        HashSet<Square> black = board.pieceLocations(BLACK);
-        int score = 0;
-        score += (white.size() * PIECEWORTH) - PIECEWORTH;
-        score -= black.size() * -PIECEWORTH;
-        if (board.kingPosition() != null) {
-            if (board.kingPosition().isEdge()) {
-                return WINNING_VALUE;
-            }
-        }
-        if (board.kingPosition() != THRONE && board.kingPosition() == null) {
+    int staticScore(Board board) {
+        int kingDistance = board.kingEdgeDistance();
+        if (kingDistance < 0) {
             return -WINNING_VALUE;
+        } else if (kingDistance == 0) {
+            return WINNING_VALUE;
         }
-        return score;
+        int escape = _escape.distance(board);
+        int escapeWorth = escape == 1 && _escape.openLines(board) > 1
+            ? ESCAPE_FORK_WORTH : ESCAPE_WORTH[escape];
+        return PIECEWORTH * (board.pieceCount(WHITE) - 1
+                             - board.pieceCount(BLACK))
+            - KING_EDGE_WORTH * kingDistance
+            + escapeWorth
+            + MOBILITY_WORTH * (board.mobility(WHITE)
+                                - board.mobility(BLACK))
+            + THRONE_GUARD_WORTH * board.throneGuards();
     }
 
 }
@@ -2,8 +2,9 @@ package tablut;
 import java.util.Formatter;
 import java.util.Stack;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.HashMap;
+import java.util.Random;
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
@@ -25,6 +26,27 @@ class Board {
         WTHRONE = sq(3, 4),
         ETHRONE = sq(5, 4);
 
+    /** Index of THRONE. */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /** EDGE_DISTANCE[i] is the number of squares between the square with
+     *  index i and the nearest edge. */
+    private static final int[] EDGE_DISTANCE = new int[NUM_SQUARES];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int row = sq(i).row(), col = sq(i).col();
+            EDGE_DISTANCE[i] = Math.min(Math.min(row, col),
+                                        Math.min(SIZE - 1 - row,
+                                                 SIZE - 1 - col));
+        }
+    }
+
+    /** An upper bound on the number of legal moves in any position: each
+     *  square can be reached along each of the four rays through it by at
+     *  most one piece (the nearest). */
+    static final int MAX_MOVES = 4 * NUM_SQUARES;
+
     /** Initial positions of attackers. */
     static final Square[] INITIAL_ATTACKERS = {
         sq(0, 3), sq(0, 4), sq(0, 5), sq(1, 4),
@@ -39,6 +61,24 @@ class Board {
         sq(4, 6), sq(4, 2), sq(2, 4), sq(6, 4)
     };
 
+    /** Zobrist keys: ZOBRIST[p][i] is XORed into the position key when
+     *  Piece p occupies the square with index i (the EMPTY row is zero). */
+    static final long[][] ZOBRIST =
+        new long[Piece.values().length][NUM_SQUARES];
+
+    /** XORed into the position key when WHITE is to move. */
+    static final long WHITE_TO_MOVE;
+
+    static {
+        Random keys = new Random(0x5eed7ab1L);
+        for (Piece p : Piece.values()) {
+            for (int i = 0; p != EMPTY && i < NUM_SQUARES; i += 1) {
+                ZOBRIST[p.ordinal()][i] = keys.nextLong();
+            }
+        }
+        WHITE_TO_MOVE = keys.nextLong();
+    }
+
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
     Board() {
@@ -49,34 +89,46 @@ class Board {
     Board(Board model) {
         copy(model);
     }
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me.  I share no mutable state with MODEL, so the
+     *  two may then be used by different threads. */
     void copy(Board model) {
         if (model == this) {
             return;
         }
-        init();
-        this._board = new Piece[SIZE][SIZE];
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                this._board[i][j] = model._board[i][j];
-            }
-        }
-        for (Square s : INITIAL_DEFENDERS) {
-            this._board[s.row()][s.col()] = model._board[s.row()][s.col()];
-        }
-        for (Square s : INITIAL_ATTACKERS) {
-            this._board[s.row()][s.col()] = model._board[s.row()][s.col()];
-        }
-        this._board[THRONE.row()][THRONE.col()] =
-                model._board[THRONE.row()][THRONE.col()];
-        this._moves = model.moves();
+        this._limit = model._limit;
+        this._whiteLo = model._whiteLo;
+        this._whiteHi = model._whiteHi;
+        this._blackLo = model._blackLo;
+        this._blackHi = model._blackHi;
+        this._occLo = model._occLo;
+        this._occHi = model._occHi;
+        this._king = model._king;
+        this._pieces = new int[][] {
+            model._pieces[0].clone(), model._pieces[1].clone()
+        };
+        this._pieceCounts = model._pieceCounts.clone();
+        this._mobility = model._mobility.clone();
+        this._throneGuards = model._throneGuards;
+        this._piecePositions = model._piecePositions.clone();
+        this._hash = model._hash;
+        this._moves = new Stack<>();
+        this._moves.addAll(model._moves);
         this._turn = model.turn();
         this._winner = model._winner;
+        this._repeated = model._repeated;
         this._moveCount = model.moveCount();
-        this._bpositions = model.bpositions();
-        this.capturedmap = model.capturedmap;
-        this.locs = model.locs;
-
+        this._history = Arrays.copyOf(model._history, model._history.length);
+        this._historySize = model._historySize;
+        this._positions = new PositionCounts(model._positions);
+        this._undoInfo = Arrays.copyOf(model._undoInfo,
+                                       model._undoInfo.length);
+        this._undoHash = Arrays.copyOf(model._undoHash,
+                                       model._undoHash.length);
+        this._undoCapturedLo = Arrays.copyOf(model._undoCapturedLo,
+                                             model._undoCapturedLo.length);
+        this._undoCapturedHi = Arrays.copyOf(model._undoCapturedHi,
+                                             model._undoCapturedHi.length);
+        this._undoSize = model._undoSize;
     }
 
     /** Clears the board to the initial position. */
@@ -85,24 +137,32 @@ class Board {
         _turn = BLACK;
         _winner = null;
         _moveCount = 0;
-        _bpositions = new ArrayList<>();
+        _repeated = false;
+        _history = new long[INITIAL_HISTORY];
+        _historySize = 0;
+        _positions = new PositionCounts();
         _moves = new Stack<>();
-        _board = new Piece[SIZE][SIZE];
-        capturedmap = new HashMap<>();
-        locs = new ArrayList<>();
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                _board[i][j] = EMPTY;
-            }
-        }
+        _undoInfo = new int[INITIAL_HISTORY];
+        _undoHash = new long[INITIAL_HISTORY];
+        _undoCapturedLo = new long[INITIAL_HISTORY];
+        _undoCapturedHi = new long[INITIAL_HISTORY];
+        _undoSize = 0;
+        _whiteLo = _whiteHi = _blackLo = _blackHi = _occLo = _occHi = 0;
+        _king = -1;
+        _hash = 0;
+        _pieces = new int[2][NUM_SQUARES];
+        _pieceCounts = new int[2];
+        _mobility = new int[2];
+        _throneGuards = 0;
+        _piecePositions = new int[NUM_SQUARES];
         for (Square s : INITIAL_ATTACKERS) {
-            _board[s.row()][s.col()] = BLACK;
+            put(BLACK, s);
         }
         for (Square s : INITIAL_DEFENDERS) {
-            _board[s.row()][s.col()] = WHITE;
+            put(WHITE, s);
         }
-        _board[THRONE.row()][THRONE.col()] = KING;
-        _bpositions.add(encodedBoard());
+        put(KING, THRONE);
+        recordPosition();
 
     }
 
@@ -114,6 +174,12 @@ class Board {
         }
     }
 
+    /** Return the move limit set by setMoveLimit (Integer.MAX_VALUE if
+     *  none). */
+    int moveLimit() {
+        return _limit;
+    }
+
     /** Return a Piece representing whose move it is (WHITE or BLACK). */
     Piece turn() {
         return _turn;
@@ -129,21 +195,31 @@ class Board {
     boolean repeatedPosition() {
         return _repeated;
     }
-    /** Returns true iff I captured a piece. */
+    /** Returns true iff the last move captured a piece. */
     boolean captured() {
-        return _captured;
+        return _undoSize > 0
+            && (_undoCapturedLo[_undoSize - 1]
+                | _undoCapturedHi[_undoSize - 1]) != 0;
+    }
+
+    /** Return the Zobrist key of the current position: the pieces on the
+     *  board and the side to move. */
+    long hash() {
+        return _turn.side() == WHITE ? _hash ^ WHITE_TO_MOVE : _hash;
     }
 
     /** Record current position and set winner() next mover if the current
      *  position is a repeat. */
-    private void checkRepeated() {
-        for (int i = 0; i < _bpositions.size(); i++) {
-            for (int j = i + 1; j < _bpositions.size(); j++) {
-                if (_bpositions.get(i).equals(_bpositions.get(j))) {
-                    _repeated = true;
-                    _winner = _turn;
-                }
-            }
+    private void recordPosition() {
+        long key = hash();
+        if (_historySize == _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _history.length);
+        }
+        _history[_historySize] = key;
+        _historySize += 1;
+        if (_positions.add(key) > 1) {
+            _repeated = true;
+            _winner = _turn;
         }
     }
     /** @return My movestack. */
@@ -159,30 +235,121 @@ class Board {
 
     /** Return location of the king. */
     Square kingPosition() {
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                if (get(i, j) == KING) {
-                    return Square.sq(i, j);
-                }
-
-            }
-        }
-        return null;
+        return _king < 0 ? null : sq(_king);
     }
 
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return  this._board[s.row()][s.col()];
+        return get(s.index());
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    final Piece get(int index) {
+        if (index == _king) {
+            return KING;
+        } else if (hasBit(_whiteLo, _whiteHi, index)) {
+            return WHITE;
+        } else if (hasBit(_blackLo, _blackHi, index)) {
+            return BLACK;
+        } else {
+            return EMPTY;
+        }
+    }
+
+    /** Return the number of pieces on SIDE, counting the king as WHITE. */
+    int pieceCount(Piece side) {
+        return _pieceCounts[sideIndex(side)];
     }
-    /** return boardpositions. */
-    ArrayList<String> bpositions() {
-        return _bpositions;
+
+    /** Return the square index of piece #K on SIDE (the king counting as
+     *  WHITE), where 0 <= K < pieceCount(SIDE).  Pieces are numbered in no
+     *  particular order, and the numbering changes as pieces are put on or
+     *  taken off the board. */
+    int pieceIndex(Piece side, int k) {
+        return _pieces[sideIndex(side)][k];
+    }
+
+    /** Return the square of piece #K on SIDE, as for pieceIndex. */
+    Square pieceSquare(Piece side, int k) {
+        return sq(pieceIndex(side, k));
+    }
+
+    /** Return the number of empty squares to which pieces of SIDE (the
+     *  king counting as WHITE) have a clear line, counting a square once
+     *  for each piece that sees it.  This overcounts legal moves slightly,
+     *  since the throne is included. */
+    int mobility(Piece side) {
+        return _mobility[sideIndex(side)];
+    }
+
+    /** Return the number of WHITE pieces (not counting the king) next to
+     *  the throne. */
+    int throneGuards() {
+        return _throneGuards;
+    }
+
+    /** Return the number of squares between the king and the nearest
+     *  edge, or -1 if there is no king. */
+    int kingEdgeDistance() {
+        return _king < 0 ? -1 : EDGE_DISTANCE[_king];
+    }
+
+    /** Return the LO word of the bitboard of SIDE's pieces (the king
+     *  counting as WHITE). */
+    private long piecesLo(Piece side) {
+        if (side == BLACK) {
+            return _blackLo;
+        }
+        return _king < 0 ? _whiteLo : _whiteLo | loBit(_king);
+    }
+
+    /** Return the HI word of the bitboard of SIDE's pieces, as for
+     *  piecesLo. */
+    private long piecesHi(Piece side) {
+        if (side == BLACK) {
+            return _blackHi;
+        }
+        return _king < 0 ? _whiteHi : _whiteHi | hiBit(_king);
+    }
+
+    /** Return the row of _pieces and _pieceCounts for SIDE. */
+    private static int sideIndex(Piece side) {
+        return side == BLACK ? 1 : 0;
+    }
+
+    /** Return true iff the square with index INDEX holds a piece that
+     *  may partner with a piece of MOVER (BLACK, WHITE, or KING, the
+     *  latter standing for the white side) in a capture. */
+    private boolean isAlly(int index, Piece mover) {
+        if (mover == BLACK) {
+            return hasBit(_blackLo, _blackHi, index);
+        }
+        return index == _king || hasBit(_whiteLo, _whiteHi, index);
+    }
+
+    /** Return the number of BLACK pieces orthogonally adjacent to the
+     *  square with index INDEX. */
+    private int blackNeighbors(int index) {
+        return Long.bitCount(_blackLo & NEIGHBORS_LO[index])
+            + Long.bitCount(_blackHi & NEIGHBORS_HI[index]);
+    }
+    /** Return the number of positions recorded for repetition checking:
+     *  the current one and those before it since the initial position or
+     *  the last clearUndo. */
+    int positionCount() {
+        return _historySize;
+    }
+
+    /** Return the key (see hash()) of recorded position #K, where
+     *  0 <= K < positionCount(), the current position being the last. */
+    long positionKey(int k) {
+        return _history[k];
     }
 
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return get(Square.sq(col, row));
+        return get(Square.sq(col, row).index());
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -190,25 +357,116 @@ class Board {
         return get(col - 'a', row - '1');
     }
 
-    /** Set square S to P. */
+    /** Set square S to P.  There is at most one king on the board, so
+     *  putting a KING removes any other king. */
     final void put(Piece p, Square s) {
-        _board[s.row()][s.col()] = p;
-    }
-
-    /** @param m Set piece to s and record for undoing
-     * @param p piece
-     * @param s square*/
-    final void revPut(Move m, Piece p, Square s) {
-        _board[s.row()][s.col()] = p;
-        locs.add(s);
-        String string = _moveCount + " " + m.toString();
-        if (capturedmap.containsKey(string)) {
-            capturedmap.replace(string, locs);
-        } else {
-            capturedmap.put(_moveCount + " " + m.toString(), locs);
+        int i = s.index();
+        Piece old = get(i);
+        if (old == p) {
+            return;
+        }
+        long lo = loBit(i), hi = hiBit(i);
+        if (old != EMPTY) {
+            _hash ^= ZOBRIST[old.ordinal()][i];
+            removePiece(sideIndex(old), i);
+            _mobility[sideIndex(old)] -= reach(i);
+            _whiteLo &= ~lo; _whiteHi &= ~hi;
+            _blackLo &= ~lo; _blackHi &= ~hi;
+            _occLo &= ~lo; _occHi &= ~hi;
+            adjustLines(i, 1);
+            if (old == KING) {
+                _king = -1;
+            } else if (old == WHITE && isNeighbor(i, THRONE_INDEX)) {
+                _throneGuards -= 1;
+            }
+        }
+        switch (p) {
+        case WHITE:
+            _whiteLo |= lo; _whiteHi |= hi;
+            break;
+        case BLACK:
+            _blackLo |= lo; _blackHi |= hi;
+            break;
+        case KING:
+            if (_king >= 0) {
+                put(EMPTY, sq(_king));
+            }
+            _king = i;
+            break;
+        default:
+            return;
+        }
+        _hash ^= ZOBRIST[p.ordinal()][i];
+        addPiece(sideIndex(p), i);
+        adjustLines(i, -1);
+        _occLo |= lo; _occHi |= hi;
+        _mobility[sideIndex(p)] += reach(i);
+        if (p == WHITE && isNeighbor(i, THRONE_INDEX)) {
+            _throneGuards += 1;
+        }
+    }
+
+    /** Return the number of empty squares in a line from the square with
+     *  index INDEX in direction DIR (as for Square.rookMove), up to the
+     *  first occupied square or the edge. */
+    private int run(int index, int dir) {
+        int n = 0;
+        for (int t : ROOK_RAYS[index][dir]) {
+            if (hasBit(_occLo, _occHi, t)) {
+                break;
+            }
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Return the number of empty squares that a piece on the square with
+     *  index INDEX has a clear line to. */
+    private int reach(int index) {
+        return run(index, 0) + run(index, 1) + run(index, 2) + run(index, 3);
+    }
+
+    /** Update _mobility for the pieces that see the empty square with
+     *  index INDEX along a line, when that square is about to be
+     *  occupied (SIGN = -1) or has just been vacated (SIGN = 1).  Each
+     *  such piece loses or gains the square and those beyond it. */
+    private void adjustLines(int index, int sign) {
+        for (int d = 0; d < 4; d += 1) {
+            for (int t : ROOK_RAYS[index][d]) {
+                if (hasBit(_occLo, _occHi, t)) {
+                    _mobility[sideIndex(get(t))] +=
+                        sign * (1 + run(index, (d + 2) & 3));
+                    break;
+                }
+            }
         }
     }
 
+    /** Add square index I to the piece list for side index SIDE. */
+    private void addPiece(int side, int i) {
+        _piecePositions[i] = _pieceCounts[side];
+        _pieces[side][_pieceCounts[side]] = i;
+        _pieceCounts[side] += 1;
+    }
+
+    /** Remove square index I from the piece list for side index SIDE,
+     *  moving the last piece in the list into its place. */
+    private void removePiece(int side, int i) {
+        _pieceCounts[side] -= 1;
+        int last = _pieces[side][_pieceCounts[side]];
+        _pieces[side][_piecePositions[i]] = last;
+        _piecePositions[last] = _piecePositions[i];
+    }
+
+    /** Remove the piece captured on S by the last move, recording it in
+     *  that move's undo record. */
+    private void removeCaptured(Square s) {
+        int i = s.index();
+        put(EMPTY, s);
+        _undoCapturedLo[_undoSize - 1] |= loBit(i);
+        _undoCapturedHi[_undoSize - 1] |= hiBit(i);
+    }
+
     /** Set square COL ROW to P. */
     final void put(Piece p, char col, char row) {
         put(p, sq(col - 'a', row - '1'));
@@ -218,25 +476,10 @@ class Board {
      *  board.  For this to be true, FROM-TO must be a rook move and the
      *  squares along it, other than FROM, must be empty. */
     boolean isUnblockedMove(Square from, Square to) {
-        Square copy;
         if (from.isRookMove(to)) {
-            int dir = from.direction(to);
-            if (dir == 0 || dir == 2) {
-                for (int i = 1; i <= Math.abs(to.row() - from.row()); i++) {
-                    copy = from.rookMove(dir, i);
-                    if (get(copy) != EMPTY) {
-                        return false;
-                    }
-                }
-            } else if (dir == 1 || dir == 3) {
-                for (int i = 1; i <= Math.abs(to.col() - from.col()); i++) {
-                    copy = from.rookMove(dir, i);
-                    if (get(copy) != EMPTY) {
-                        return false;
-                    }
-                }
-            }
-            return true;
+            int f = from.index(), t = to.index();
+            return (_occLo & PATH_LO[f][t]) == 0
+                && (_occHi & PATH_HI[f][t]) == 0;
         }
         return false;
     }
@@ -272,6 +515,7 @@ class Board {
     void makeMove(Square from, Square to) {
         Move m = mv(from, to);
         _moves.push(m);
+        pushUndo(from, to);
         if (moveCount() > _limit) {
             _winner = turn().opponent();
         }
@@ -285,21 +529,13 @@ class Board {
                 put(KING, to);
                 put(EMPTY, from);
                 _turn = KING;
-                if (!partner(to).isEmpty() && !partner(to).contains(null)) {
-                    for (Square s : partner(to)) {
-                        capture(to, s);
-                    }
-                }
+                captureAround(to);
                 _turn = BLACK;
             }
         } else {
             put(turn(), to);
             put(EMPTY, from);
-            if (!partner(to).isEmpty()) {
-                for (Square s : partner(to)) {
-                    capture(to, s);
-                }
-            }
+            captureAround(to);
             if (_turn == BLACK) {
                 if (to.adjacent(NTHRONE) || to.adjacent(STHRONE)
                         || to.adjacent(WTHRONE) || to.adjacent(ETHRONE)) {
@@ -308,25 +544,40 @@ class Board {
             }
             _turn = turn().opponent();
         }
-        _bpositions.add(encodedBoard());
-        checkRepeated();
+        recordPosition();
     }
     /** @param current Return my partner to help me capture a piece */
     ArrayList<Square> partner(Square current) {
         ArrayList<Square> partners = new ArrayList<>();
-        HashSet<Square> possiblesquares = pieceLocations(turn());
         for (int i = 0; i < 4; i++) {
             Square twoaway = current.rookMove(i, 2);
-            if (possiblesquares.contains(twoaway)) {
-                partners.add(twoaway);
-            }
-            if (twoaway == THRONE && get(twoaway) == EMPTY) {
+            if (isPartner(twoaway)) {
                 partners.add(twoaway);
             }
         }
         return partners;
     }
 
+    /** Return true iff TWOAWAY (possibly null) is hostile to the opponents
+     *  of turn(): an ally of turn() or the empty throne. */
+    private boolean isPartner(Square twoaway) {
+        if (twoaway == null) {
+            return false;
+        }
+        return isAlly(twoaway.index(), turn())
+            || twoaway == THRONE && get(twoaway) == EMPTY;
+    }
+
+    /** Perform all captures made by turn() moving to CURRENT. */
+    private void captureAround(Square current) {
+        for (int i = 0; i < 4; i++) {
+            Square twoaway = current.rookMove(i, 2);
+            if (isPartner(twoaway)) {
+                capture(current, twoaway);
+            }
+        }
+    }
+
     /** Move according to MOVE, assuming it is a legal move. */
     void makeMove(Move move) {
         makeMove(move.from(), move.to());
@@ -337,17 +588,16 @@ class Board {
     private void capture(Square sq0, Square sq2) {
         Piece turn = this.turn();
         Square captured = sq0.between(sq2);
-        Move m = _moves.get(_moves.size() - 1);
         if (turn == WHITE || turn == KING) {
             if (get(captured) == BLACK) {
-                revPut(m, EMPTY, captured);
+                removeCaptured(captured);
             }
         } else {
             if (get(captured) == KING) {
                 if (captured == THRONE) {
                     if (get(NTHRONE) == BLACK && get(STHRONE) == BLACK
                             && get(ETHRONE) == BLACK && get(WTHRONE) == BLACK) {
-                        revPut(m, EMPTY, THRONE);
+                        removeCaptured(THRONE);
                         _winner = BLACK;
                     } else {
                         return;
@@ -356,17 +606,17 @@ class Board {
                         || captured == WTHRONE || captured == ETHRONE
                         && get(THRONE) == EMPTY)) {
                     if (thrones()) {
-                        revPut(m, EMPTY, captured);
+                        removeCaptured(captured);
                         _winner = BLACK;
                     }
                 } else if (captured != THRONE || captured != NTHRONE
                         || captured != STHRONE
                         || captured != ETHRONE || captured != WTHRONE) {
-                    revPut(m, EMPTY, captured);
+                    removeCaptured(captured);
                     _winner = BLACK;
                 }
             } else if (get(captured) == WHITE) {
-                revPut(m, EMPTY, captured);
+                removeCaptured(captured);
             }
         }
     }
@@ -374,109 +624,358 @@ class Board {
     /** @param throne use the throne.
      * @param black  Special case of capture. */
     private void specialCapture(Square black, Square throne) {
-        int blackcount = 0;
-        int whitecount = 0;
-        Move m = _moves.get(_moves.size() - 1);
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board.length; j++) {
-                if (throne.adjacent(Square.sq(i, j))
-                        && get(Square.sq(i, j)) == BLACK) {
-                    blackcount += 1;
-                } else if (throne.adjacent(Square.sq(i, j))
-                        && get(Square.sq(i, j)) == WHITE) {
-                    whitecount += 1;
-                }
-                if (blackcount == 3 && whitecount == 1) {
-                    Square captured = black.between(throne);
-                    revPut(m, EMPTY, captured);
-
-                }
-            }
+        int t = throne.index();
+        int blackcount = blackNeighbors(t);
+        int whitecount = Long.bitCount(_whiteLo & NEIGHBORS_LO[t])
+            + Long.bitCount(_whiteHi & NEIGHBORS_HI[t]);
+        Square captured = black.between(throne);
+        if (blackcount == 3 && whitecount == 1 && get(captured) == WHITE) {
+            removeCaptured(captured);
         }
     }
     /** @return  Capture if kings on a different throne.  */
     private boolean thrones() {
-        Square k = kingPosition();
-        int blackcount = 0;
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board.length; j++) {
-                if (k.adjacent(Square.sq(i, j))
-                        && get(Square.sq(i, j)) == BLACK) {
-                    blackcount += 1;
-                }
-                if (get(THRONE) == EMPTY && blackcount == 3) {
-                    return true;
-                }
-            }
+        return get(THRONE) == EMPTY && blackNeighbors(_king) >= 3;
+    }
+
+    /** Push an undo record for the move FROM-TO, which is about to be
+     *  made, saving the state that the move may change.  The record's
+     *  captured squares are filled in as the move captures. */
+    private void pushUndo(Square from, Square to) {
+        if (_undoSize == _undoInfo.length) {
+            int n = 2 * _undoSize;
+            _undoInfo = Arrays.copyOf(_undoInfo, n);
+            _undoHash = Arrays.copyOf(_undoHash, n);
+            _undoCapturedLo = Arrays.copyOf(_undoCapturedLo, n);
+            _undoCapturedHi = Arrays.copyOf(_undoCapturedHi, n);
         }
-        return false;
+        _undoInfo[_undoSize] = from.index() * NUM_SQUARES + to.index()
+            | (_king + 1) << UNDO_KING_SHIFT
+            | _turn.ordinal() << UNDO_TURN_SHIFT
+            | (_winner == null ? 0 : _winner.ordinal() + 1)
+                << UNDO_WINNER_SHIFT
+            | (_repeated ? UNDO_REPEATED : 0);
+        _undoHash[_undoSize] = _hash;
+        _undoCapturedLo[_undoSize] = _undoCapturedHi[_undoSize] = 0;
+        _undoSize += 1;
     }
 
     /** Undo one move.  Has no effect on the initial board. */
     void undo() {
-        if (_moveCount > 0) {
+        if (_undoSize > 0) {
+            _undoSize -= 1;
+            int info = _undoInfo[_undoSize];
+            int move = info & UNDO_MOVE_MASK;
+            int king = (info >>> UNDO_KING_SHIFT & UNDO_KING_MASK) - 1;
+            int winner = info >>> UNDO_WINNER_SHIFT & UNDO_WINNER_MASK;
+            Square from = sq(move / NUM_SQUARES), to = sq(move % NUM_SQUARES);
             undoPosition();
             _moveCount = _moveCount - 1;
-            Move m = _moves.pop();
-            Piece a = get(m.to());
-            for (String move : capturedmap.keySet()) {
-                ArrayList<Square> squares = capturedmap.get(move);
-                for (Square s : squares) {
-                    put(a, s);
-                }
+            _moves.pop();
+            put(get(to), from);
+            put(EMPTY, to);
+            _turn = PIECES[info >>> UNDO_TURN_SHIFT & UNDO_TURN_MASK];
+            Piece captured = _turn == BLACK ? WHITE : BLACK;
+            long lo = _undoCapturedLo[_undoSize],
+                hi = _undoCapturedHi[_undoSize];
+            for (; lo != 0; lo &= lo - 1) {
+                int i = Long.numberOfTrailingZeros(lo);
+                put(i == king ? KING : captured, sq(i));
             }
-            put(_turn.opponent(), m.from());
-            put(EMPTY, m.to());
-            _turn = turn().opponent();
+            for (; hi != 0; hi &= hi - 1) {
+                int i = 64 + Long.numberOfTrailingZeros(hi);
+                put(i == king ? KING : captured, sq(i));
+            }
+            _winner = winner == 0 ? null : PIECES[winner - 1];
+            _repeated = (info & UNDO_REPEATED) != 0;
+            assert _hash == _undoHash[_undoSize];
         }
     }
 
-    /** Remove record of current position in the set of positions encountered,
-     *  unless it is a repeated position or we are at the first move. */
+    /** Remove record of current position in the set of positions
+     *  encountered. */
     private void undoPosition() {
-        checkRepeated();
-        if (_repeated) {
-            return;
+        _historySize -= 1;
+        _positions.remove(_history[_historySize]);
+    }
+
+    /** Set up the position with the king on the square with index KING,
+     *  WHITE pieces on the squares with indices WHITES[0 .. WHITECOUNT-1],
+     *  and BLACK pieces on BLACKS[0 .. BLACKCOUNT-1], with TURN to move.
+     *  The position has no winner, no move limit, and no history, as if
+     *  it were the initial position of a game. */
+    void setPosition(int king, int[] whites, int whiteCount,
+                     int[] blacks, int blackCount, Piece turn) {
+        for (int side = 0; side < 2; side += 1) {
+            while (_pieceCounts[side] > 0) {
+                put(EMPTY, sq(_pieces[side][_pieceCounts[side] - 1]));
+            }
+        }
+        put(KING, sq(king));
+        for (int k = 0; k < whiteCount; k += 1) {
+            put(WHITE, sq(whites[k]));
+        }
+        for (int k = 0; k < blackCount; k += 1) {
+            put(BLACK, sq(blacks[k]));
         }
-        _bpositions.remove(_bpositions.size() - 1);
+        _limit = Integer.MAX_VALUE;
+        _turn = turn;
+        _winner = null;
         _repeated = false;
+        _moveCount = 0;
+        clearUndo();
     }
 
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        while (_moves != null) {
-            _moves.pop();
-        }
-        _bpositions.clear();
+        _moves.clear();
+        _undoSize = 0;
+        _positions.clear();
+        _historySize = 0;
+        recordPosition();
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
         _legalmoves = new ArrayList<>();
-        HashSet<Square> locations = pieceLocations(side);
-        Piece temp = _turn;
-        _turn = side;
-        for (Square s : locations) {
-            for (int i = 0; i < _board.length; i++) {
-                for (int j = 0; j < _board[i].length; j++) {
-                    if (exists(i, j)) {
-                        if (isLegal(s, Square.sq(i, j))) {
-                            _legalmoves.add(Move.mv(s, Square.sq(i, j)));
+        int[] moves = new int[MAX_MOVES];
+        int n = legalMoves(side, moves);
+        for (int i = 0; i < n; i += 1) {
+            _legalmoves.add(Move.mv(moves[i]));
+        }
+        if (_legalmoves.size() == 0) {
+            _winner = _turn.opponent();
+        }
+        return _legalmoves;
+    }
+
+    /** Store the codes (see Move.code()) of all legal moves on the current
+     *  board for SIDE (ignoring whose turn it is at the moment) in
+     *  MOVES[0 .. N-1], and return N.  MOVES must have room for MAX_MOVES
+     *  moves.  Unlike legalMoves(SIDE), does not allocate and does not set
+     *  the winner when there are no moves.  The moves come in order of
+     *  their from squares (by index), so that the order depends only on
+     *  the position and not on how it was reached. */
+    int legalMoves(Piece side, int[] moves) {
+        long lo = piecesLo(side), hi = piecesHi(side);
+        int n = 0;
+        while (lo != 0 || hi != 0) {
+            int from;
+            if (lo != 0) {
+                from = Long.numberOfTrailingZeros(lo);
+                lo &= lo - 1;
+            } else {
+                from = 64 + Long.numberOfTrailingZeros(hi);
+                hi &= hi - 1;
+            }
+            boolean king = from == _king;
+            for (int d = 0; d < 4; d += 1) {
+                for (int t : ROOK_RAYS[from][d]) {
+                    if (hasBit(_occLo, _occHi, t)) {
+                        break;
+                    }
+                    if (king || t != THRONE_INDEX) {
+                        moves[n] = from * NUM_SQUARES + t;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Move according to the move whose code (see Move.code()) is MOVE,
+     *  assuming it is legal. */
+    void makeMove(int move) {
+        makeMove(sq(Move.fromIndex(move)), sq(Move.toIndex(move)));
+    }
+
+    /** Pass the turn to the opponent without moving, for null-move
+     *  pruning in the search.  The resulting position is not recorded for
+     *  repetition, and must be left with undoNullMove before any other
+     *  move is undone. */
+    void makeNullMove() {
+        _turn = _turn.opponent();
+        _moveCount += 1;
+    }
+
+    /** Reverse the last makeNullMove. */
+    void undoNullMove() {
+        _turn = _turn.opponent();
+        _moveCount -= 1;
+    }
+
+    /** Return the code (see Move.code()) of the last move made and not
+     *  undone, or 0 if there is none. */
+    int lastMove() {
+        return _undoSize == 0 ? 0 : _undoInfo[_undoSize - 1] & UNDO_MOVE_MASK;
+    }
+
+    /** Return true iff the legal move coded MOVE would capture a piece
+     *  by the rules in capture(), judged without making the move.  (The
+     *  rare captures against the occupied throne in specialCapture are
+     *  not predicted.) */
+    boolean isCapture(int move) {
+        int from = Move.fromIndex(move), to = Move.toIndex(move);
+        Piece mover = get(from);
+        if (mover == KING && sq(to).isEdge()) {
+            return false;
+        }
+        for (int d = 0; d < 4; d += 1) {
+            if (capturesToward(from, to, mover, d)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the legal move FROM-TO (square indices) by MOVER
+     *  would capture the piece next to TO in direction DIR (as for
+     *  Square.rookMove). */
+    private boolean capturesToward(int from, int to, Piece mover, int dir) {
+        int[] ray = ROOK_RAYS[to][dir];
+        if (ray.length < 2) {
+            return false;
+        }
+        int captured = ray[0], two = ray[1];
+        boolean partner = two != from
+            && (isAlly(two, mover)
+                || two == THRONE_INDEX
+                   && (get(two) == EMPTY || from == THRONE_INDEX));
+        if (!partner) {
+            return false;
+        }
+        Piece victim = get(captured);
+        if (mover != BLACK) {
+            return victim == BLACK;
+        } else if (victim == WHITE) {
+            return true;
+        } else if (victim != KING) {
+            return false;
+        }
+        int blacks = blackNeighbors(captured)
+            - (isNeighbor(from, captured) ? 1 : 0)
+            + (isNeighbor(to, captured) ? 1 : 0);
+        if (captured == THRONE_INDEX) {
+            return blacks == 4;
+        } else if (isNeighbor(captured, THRONE_INDEX)
+                   && (captured != ETHRONE.index()
+                       || get(THRONE) == EMPTY)) {
+            return get(THRONE) == EMPTY && blacks >= 3;
+        }
+        return true;
+    }
+
+    /** Store the codes of the legal moves for SIDE that capture a piece
+     *  (see isCapture), or that move the king to the edge, in
+     *  MOVES[0 .. N-1], and return N.  Only moves to empty squares next
+     *  to an opposing piece are examined for captures.  Like
+     *  legalMoves(SIDE, MOVES), does not allocate, and orders the moves by
+     *  their from squares. */
+    int captureMoves(Piece side, int[] moves) {
+        Piece enemy = side == BLACK ? WHITE : BLACK;
+        long targetLo, targetHi;
+        targetLo = targetHi = 0;
+        for (int k = 0; k < pieceCount(enemy); k += 1) {
+            int victim = pieceIndex(enemy, k);
+            targetLo |= NEIGHBORS_LO[victim];
+            targetHi |= NEIGHBORS_HI[victim];
+        }
+        targetLo &= ~_occLo;
+        targetHi &= ~_occHi;
+        long lo = piecesLo(side), hi = piecesHi(side);
+        int n = 0;
+        while (lo != 0 || hi != 0) {
+            int from;
+            if (lo != 0) {
+                from = Long.numberOfTrailingZeros(lo);
+                lo &= lo - 1;
+            } else {
+                from = 64 + Long.numberOfTrailingZeros(hi);
+                hi &= hi - 1;
+            }
+            boolean king = from == _king;
+            for (int d = 0; d < 4; d += 1) {
+                for (int t : ROOK_RAYS[from][d]) {
+                    if (hasBit(_occLo, _occHi, t)) {
+                        break;
+                    }
+                    int move = from * NUM_SQUARES + t;
+                    if (king && sq(t).isEdge()
+                        || (king || t != THRONE_INDEX)
+                           && hasBit(targetLo, targetHi, t)
+                           && isCapture(move)) {
+                        moves[n] = move;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff BLACK, if it were to move now, could capture the
+     *  king. */
+    boolean kingThreatened() {
+        if (_king < 0) {
+            return false;
+        }
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_RAYS[_king][d];
+            if (ray.length == 0 || ray[0] == THRONE_INDEX
+                || hasBit(_occLo, _occHi, ray[0])) {
+                continue;
+            }
+            int to = ray[0], back = (d + 2) & 3;
+            for (int e = 0; e < 4; e += 1) {
+                for (int t : ROOK_RAYS[to][e]) {
+                    if (hasBit(_occLo, _occHi, t)) {
+                        if (hasBit(_blackLo, _blackHi, t)
+                            && capturesToward(t, to, BLACK, back)) {
+                            return true;
                         }
+                        break;
                     }
                 }
             }
         }
-        _turn = temp;
-        if (_legalmoves.size() == 0) {
-            _winner = _turn.opponent();
+        return false;
+    }
+
+    /** Return the number of directions in which there is an unobstructed
+     *  line from the square with index INDEX to the edge of the board,
+     *  treating the square with index VACATED (if any) as empty. */
+    int openLines(int index, int vacated) {
+        long occLo = _occLo, occHi = _occHi;
+        if (vacated >= 0) {
+            occLo &= ~loBit(vacated);
+            occHi &= ~hiBit(vacated);
         }
-        return _legalmoves;
+        int lines = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_RAYS[index][d];
+            if (ray.length > 0) {
+                int edge = ray[ray.length - 1];
+                if ((occLo & PATH_LO[index][edge]) == 0
+                    && (occHi & PATH_HI[index][edge]) == 0) {
+                    lines += 1;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /** Return true iff the squares with indices I0 and I1 are orthogonally
+     *  adjacent. */
+    private static boolean isNeighbor(int i0, int i1) {
+        return hasBit(NEIGHBORS_LO[i1], NEIGHBORS_HI[i1], i0);
     }
 
-    /** Return true iff SIDE has a legal move. */
+    /** Return true iff SIDE has a legal move.  If it has none, the
+     *  opponent of the side to move becomes the winner, as for
+     *  legalMoves(SIDE). */
     boolean hasMove(Piece side) {
         List<Move> check = legalMoves(side);
         return !check.isEmpty();
@@ -517,27 +1016,34 @@ class Board {
     HashSet<Square> pieceLocations(Piece side) {
         assert side != EMPTY;
         HashSet<Square> p = new HashSet<>();
-        if (side == WHITE || side == KING) {
-            if (kingPosition() != null) {
-                p.add(kingPosition());
+        if (side == KING) {
+            if (_king >= 0) {
+                p.add(sq(_king));
             }
-        }
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                if (get(i, j) == side) {
-                    p.add(Square.sq(i, j));
-                } else if (_turn == KING) {
-                    if (get(i, j) == WHITE) {
-                        p.add(Square.sq(i, j));
-                    }
-                }
+        } else {
+            for (int k = 0; k < pieceCount(side); k += 1) {
+                p.add(pieceSquare(side, k));
             }
         }
+        if (_turn == KING && side != WHITE) {
+            addSquares(p, _whiteLo, _whiteHi);
+        }
         return p;
     }
 
-    /** Return the contents of _board in the order of SQUARE_LIST as a sequence
-     *  of characters: the toString values of the current turn and Pieces. */
+    /** Add the squares in the bitboard LO, HI to SQUARES. */
+    private static void addSquares(HashSet<Square> squares, long lo, long hi) {
+        for (; lo != 0; lo &= lo - 1) {
+            squares.add(sq(Long.numberOfTrailingZeros(lo)));
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            squares.add(sq(64 + Long.numberOfTrailingZeros(hi)));
+        }
+    }
+
+    /** Return the contents of the board in the order of SQUARE_LIST as a
+     *  sequence of characters: the toString values of the current turn and
+     *  Pieces. */
     String encodedBoard() {
         char[] result = new char[Square.SQUARE_LIST.size() + 1];
         result[0] = turn().toString().charAt(0);
@@ -556,20 +1062,64 @@ class Board {
     private int _moveCount;
     /** True when current board is a repeated position (ending the game). */
     private boolean _repeated;
-    /** 2d array board with the pieces inside. */
-    private Piece[][] _board;
+    /** Bitboards of the squares holding WHITE pieces other than the king,
+     *  BLACK pieces, and all pieces (see Square). */
+    private long _whiteLo, _whiteHi, _blackLo, _blackHi, _occLo, _occHi;
+    /** Index of the square holding the king, or -1 if there is none. */
+    private int _king;
+    /** Piece lists: _pieces[0][0 .. _pieceCounts[0]-1] are the indices of
+     *  the squares holding WHITE pieces and the king, and _pieces[1] those
+     *  holding BLACK pieces. */
+    private int[][] _pieces;
+    /** Number of pieces in each row of _pieces. */
+    private int[] _pieceCounts;
+    /** See mobility(), indexed like _pieceCounts. */
+    private int[] _mobility;
+    /** See throneGuards(). */
+    private int _throneGuards;
+    /** _piecePositions[i] is the position in its piece list of the piece on
+     *  the square with index i (meaningless for empty squares). */
+    private int[] _piecePositions;
     /** Stack of moves. */
     private Stack<Move> _moves;
-    /** Arraylist for previous board positions. */
-    private ArrayList<String> _bpositions;
+    /** Zobrist key of the pieces on the board (see hash()). */
+    private long _hash;
+    /** Keys of the positions since the initial position (or the last
+     *  clearUndo), the current one last, in _history[0 .. _historySize-1].
+     */
+    private long[] _history;
+    /** Number of keys in _history. */
+    private int _historySize;
+    /** The keys in _history, counted for repetition checks. */
+    private PositionCounts _positions;
+    /** Initial capacity of _history and the undo records. */
+    private static final int INITIAL_HISTORY = 256;
+
+    /** Field layout of _undoInfo: the move in the low bits, followed by
+     *  the king's square index + 1, the turn's ordinal, the winner's
+     *  ordinal + 1 (0 for none), and the repetition flag. */
+    private static final int
+        UNDO_MOVE_MASK = (1 << 13) - 1,
+        UNDO_KING_SHIFT = 13, UNDO_KING_MASK = (1 << 7) - 1,
+        UNDO_TURN_SHIFT = 20, UNDO_TURN_MASK = 3,
+        UNDO_WINNER_SHIFT = 22, UNDO_WINNER_MASK = 7,
+        UNDO_REPEATED = 1 << 25;
+
+    /** The Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
     /** Legalmoves for one side. */
     private ArrayList<Move> _legalmoves;
-    /** Hashmaps to store captured pieces. */
-    private HashMap<String, ArrayList<Square>> capturedmap;
-    /** Arraylist for captured pieces locations. */
-    private ArrayList<Square> locs;
-    /** True when I capture a piece. */
-    private boolean _captured;
+    /** Undo records, one per move that has not been undone, in parallel
+     *  arrays indexed 0 .. _undoSize-1.  _undoInfo packs the move
+     *  (from index * NUM_SQUARES + to index) with the king's square, turn,
+     *  winner, and repetition status from before the move; _undoHash holds
+     *  the key of the pieces before the move; and _undoCapturedLo/Hi is
+     *  the bitboard of squares the move captured. */
+    private int[] _undoInfo;
+    /** See _undoInfo. */
+    private long[] _undoHash, _undoCapturedLo, _undoCapturedHi;
+    /** Number of undo records. */
+    private int _undoSize;
     /** MoveLimit. */
     private int _limit;
 }
@@ -0,0 +1,250 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static tablut.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** Collects the opening moves of many games and writes them as an
+ *  OpeningBook.  Games come from log files written by Main's --log
+ *  option, or from self-play between AIs.  Each move within the first
+ *  few plies of a game is recorded with the number of games in which it
+ *  was played from its position and the number of those won by the side
+ *  that played it.  The book weights a move by its games plus its wins,
+ *  so that among moves played equally often, the one that won more is
+ *  preferred.
+ *  @author Michael Chien
+ */
+class BookBuilder {
+
+    /** Build a book as described by ARGS (see the usage message). */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--plies=(\\d+){0,1} --games=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1} --depth=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --={1,}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.BookBuilder"
+                               + " [--plies=N] [--games=N] [--time=MSEC]"
+                               + " [--depth=N] [--seed=N] BOOK [LOG...]");
+            System.exit(1);
+        }
+        try {
+            BookBuilder builder = new BookBuilder(
+                Integer.parseInt(options.getFirst("--plies", "16")));
+            List<String> files = options.get("--");
+            for (String log : files.subList(1, files.size())) {
+                try (BufferedReader in =
+                         new BufferedReader(new FileReader(log))) {
+                    builder.addLog(in);
+                }
+            }
+            if (options.contains("--games")) {
+                SearchOptions search = new SearchOptions();
+                search.setMoveTime(Long.parseLong(
+                                       options.getFirst("--time", "100")));
+                search.setDepth(Integer.parseInt(
+                                    options.getFirst("--depth", "0")));
+                builder.selfPlay(
+                    Integer.parseInt(options.getFirst("--games")), search,
+                    new Random(Long.parseLong(
+                                   options.getFirst("--seed", "0"))));
+            }
+            builder.write(files.get(0));
+            System.out.printf("%d games, %d moves%n",
+                              builder.games(), builder.size());
+        } catch (NumberFormatException excp) {
+            System.err.println("number too large");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not build book: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A builder that records the first PLIES plies of each game. */
+    BookBuilder(int plies) {
+        if (plies <= 0) {
+            throw Utils.error("book depth must be positive");
+        }
+        _plies = plies;
+    }
+
+    /** Return the number of games added so far. */
+    int games() {
+        return _games;
+    }
+
+    /** Return the number of distinct (position, move) pairs recorded. */
+    int size() {
+        int n = 0;
+        for (Map<Integer, int[]> moves : _stats.values()) {
+            n += moves.size();
+        }
+        return n;
+    }
+
+    /** Add the game whose moves from the initial position are MOVES.  The
+     *  game counts as a win for the side that won on the final board, if
+     *  any.  Moves after an illegal move are ignored. */
+    void addGame(List<Move> moves) {
+        Board board = new Board();
+        for (Move move : moves) {
+            if (board.winner() != null || !board.isLegal(move)) {
+                break;
+            }
+            board.makeMove(move);
+        }
+        addGame(board);
+    }
+
+    /** Add the games in LOG, a file of commands as written by Main's --log
+     *  option.  Each game runs from the start of LOG or a "new" command
+     *  to the next "new" command or the end of LOG.  Games set up with
+     *  "toggle" do not start from the initial position and are
+     *  skipped. */
+    void addLog(BufferedReader log) throws IOException {
+        Board board = new Board();
+        boolean skip = false;
+        for (String line = log.readLine(); line != null;
+             line = log.readLine()) {
+            String cmnd = line.replaceFirst("#.*", "").trim().toLowerCase();
+            if (cmnd.equals("new")) {
+                if (!skip) {
+                    addGame(board);
+                }
+                board.init();
+                skip = false;
+            } else if (cmnd.startsWith("toggle")) {
+                skip = true;
+            } else if (cmnd.equals("undo") && board.moveCount() > 1) {
+                board.undo();
+                board.undo();
+            } else if (Move.isGrammaticalMove(cmnd)) {
+                Move move = Move.mv(cmnd);
+                if (move == null || board.winner() != null
+                    || !board.isLegal(move)) {
+                    skip = true;
+                } else {
+                    board.makeMove(move);
+                }
+            }
+        }
+        if (!skip) {
+            addGame(board);
+        }
+    }
+
+    /** Add GAMES games played between AIs searching according to
+     *  OPTIONS.  So that the games differ, each starts with
+     *  RANDOM_PLIES moves chosen at random using RANDOM.  A side left
+     *  with no legal move loses.  A game that has no winner after
+     *  MAX_GAME_PLIES plies counts as a win for neither side. */
+    void selfPlay(int games, SearchOptions options, Random random) {
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int g = 0; g < games; g += 1) {
+            Board board = new Board();
+            AI white = new AI(options), black = new AI(options);
+            while (board.winner() == null
+                   && board.moveCount() < MAX_GAME_PLIES
+                   && board.hasMove(board.turn())) {
+                if (board.moveCount() < RANDOM_PLIES) {
+                    int n = board.legalMoves(board.turn(), moves);
+                    board.makeMove(moves[random.nextInt(n)]);
+                } else {
+                    AI player = board.turn() == WHITE ? white : black;
+                    board.makeMove(player.findMove(board));
+                }
+            }
+            addGame(board);
+        }
+    }
+
+    /** Write the moves recorded so far to the file named NAME as an
+     *  OpeningBook. */
+    void write(String name) throws IOException {
+        int size = size();
+        ByteBuffer out = ByteBuffer.allocate(
+            OpeningBook.HEADER_BYTES + size * OpeningBook.RECORD_BYTES);
+        OpeningBook.putHeader(out, size);
+        long[] keys = new long[_stats.size()];
+        int k = 0;
+        for (long key : _stats.keySet()) {
+            keys[k] = key;
+            k += 1;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            Map<Integer, int[]> moves = _stats.get(key);
+            List<Integer> codes = new ArrayList<>(moves.keySet());
+            codes.sort(null);
+            for (int move : codes) {
+                int[] stats = moves.get(move);
+                OpeningBook.putRecord(out, key, move,
+                                      stats[GAMES] + stats[WINS],
+                                      stats[GAMES], stats[WINS]);
+            }
+        }
+        out.flip();
+        try (FileOutputStream file = new FileOutputStream(name);
+             FileChannel channel = file.getChannel()) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /** Record the first _plies moves made on BOARD, which is undone to
+     *  the initial position, crediting those made by the winner on BOARD,
+     *  if any. */
+    private void addGame(Board board) {
+        Piece winner = board.winner();
+        _games += 1;
+        while (board.moveCount() > 0) {
+            int move = board.lastMove();
+            board.undo();
+            if (board.moveCount() < _plies) {
+                int[] stats = _stats
+                    .computeIfAbsent(board.hash(), key -> new HashMap<>())
+                    .computeIfAbsent(move, code -> new int[2]);
+                stats[GAMES] += 1;
+                if (winner != null && winner.side() == board.turn()) {
+                    stats[WINS] += 1;
+                }
+            }
+        }
+    }
+
+    /** Number of moves at the start of each self-play game chosen at
+     *  random. */
+    static final int RANDOM_PLIES = 2;
+
+    /** Most plies in one self-play game. */
+    static final int MAX_GAME_PLIES = 200;
+
+    /** Indices of the statistics recorded for each move. */
+    private static final int GAMES = 0, WINS = 1;
+
+    /** Number of plies at the start of each game that are recorded. */
+    private final int _plies;
+    /** Number of games added. */
+    private int _games;
+    /** _stats.get(k).get(m) holds the number of games in which the move
+     *  with code m was played from the position with key k, and the
+     *  number of those won by the side that played it. */
+    private final Map<Long, Map<Integer, int[]>> _stats = new HashMap<>();
+}
@@ -17,8 +17,10 @@ final class Controller {
 
     /** Controller for one or more games of Tablut, using
      *  MANUALPLAYERTEMPLATE as an exemplar for manual players
-     *  (see the Player.create method) and AUTOPLAYERTEMPLATE
-     *  as an exemplar for automated players.  Reports
+     *  (see the Player.create method), AUTOPLAYERTEMPLATE
+     *  as an exemplar for automated players, and MCTSPLAYERTEMPLATE as
+     *  an exemplar for automated players chosen by "auto <color> mcts".
+     *  Reports
      *  board changes to VIEW at appropriate points.  Uses REPORTER
      *  to report moves, wins, and errors to user. If LOGFILE is
      *  non-null, copies all commands to it. If STRICT, exits the
@@ -26,13 +28,14 @@ final class Controller {
      *  player. */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
-               boolean strict) {
+               Player mctsPlayerTemplate, boolean strict) {
         _view = view;
         _playing = false;
         _logFile = logFile;
         _input = new Scanner(System.in);
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
+        _mctsPlayerTemplate = mctsPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
         _white = _autoPlayerTemplate.create(WHITE, this);
         _black = _manualPlayerTemplate.create(BLACK, this);
@@ -49,10 +52,17 @@ final class Controller {
             _view.update(this);
             String command;
             if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
-                } else {
-                    command = _black.myMove();
+                Player mover = _board.turn() == WHITE ? _white : _black,
+                    waiting = mover == _white ? _black : _white;
+                if (mover.isManual()) {
+                    waiting.startPondering();
+                }
+                command = mover.myMove();
+                if (command == null) {
+                    if (!_board.hasMove(_board.turn())) {
+                        noteWinner();
+                    }
+                    continue;
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -171,8 +181,11 @@ final class Controller {
         new Command("dump$", this::doDump),
         new Command("undo$", this::doUndo),
         new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
+        new Command("auto\\s+(white|black)(?:\\s+(ai|mcts))?$",
+                    this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("perft\\s+(\\d+)(?:\\s+(\\d+))?(?:\\s+(\\d+))?$",
+                    this::doPerft),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
@@ -181,8 +194,11 @@ final class Controller {
     private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
+     *  so, raising an IllegalArgumentException otherwise.  First stops
+     *  any player pondering while waiting for the command. */
     private void executeCommand(String cmnd) {
+        _white.stopPondering();
+        _black.stopPondering();
         if (_logFile != null) {
             _logFile.println(cmnd);
             _logFile.flush();
@@ -225,14 +241,18 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
+    /** Command "auto <color> [<engine>]", where <color> is COLOR.group(1)
+     *  and <engine>, if present, is COLOR.group(2): "ai" (the default)
+     *  or "mcts". */
     private void doAuto(Matcher color) {
+        Player template = "mcts".equals(color.group(2))
+            ? _mctsPlayerTemplate : _autoPlayerTemplate;
         switch (color.group(1)) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -280,15 +300,40 @@ final class Controller {
         }
     }
 
+    /** Command "perft N [T [M]]", where N, T, and M are the groups of
+     *  MAT: print the number of leaves of the tree of legal moves to
+     *  depth N from the current position, divided by first move, using T
+     *  threads (default 1) and a cache of M megabytes (default none). */
+    private void doPerft(Matcher mat) {
+        try {
+            int depth = Integer.parseInt(mat.group(1));
+            int threads = mat.group(2) == null ? 1
+                : Integer.parseInt(mat.group(2));
+            int megabytes = mat.group(3) == null ? 0
+                : Integer.parseInt(mat.group(3));
+            Perft perft = new Perft(threads, megabytes);
+            perft.count(new Board(_board), depth);
+            perft.print(System.out, depth);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
         if (_winner == null) {
-            _winner = _board.winner();
-            if (_winner != null) {
-                _view.update(this);
-                _reporter.reportNote("%s wins.", _winner.toName());
-            }
+            noteWinner();
+        }
+    }
+
+    /** Record and announce the winner of the game on my board, if there
+     *  is one. */
+    private void noteWinner() {
+        _winner = _board.winner();
+        if (_winner != null) {
+            _view.update(this);
+            _reporter.reportNote("%s wins.", _winner.toName());
         }
     }
 
@@ -339,6 +384,8 @@ final class Controller {
 
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
+    /** The template for Monte Carlo players. */
+    private Player _mctsPlayerTemplate;
 
     /** Reporter for messages and errors. */
     private Reporter _reporter;
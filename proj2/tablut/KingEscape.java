@@ -0,0 +1,130 @@
+package tablut;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** Measures how close the king on a Board is to escaping to the edge:
+ *  the number of open lines from the king to the edge, and the fewest
+ *  king moves that would reach the edge if the other side did nothing.
+ *  A search evaluates the same positions over and over, so results are
+ *  cached by position key (Board.hash()).  An analyzer keeps scratch
+ *  space and a cache of its own, and is meant for use by one thread.
+ *  @author Michael Chien
+ */
+final class KingEscape {
+
+    /** The greatest distance to the edge that distance reports. */
+    static final int MAX_DISTANCE = 3;
+
+    /** The distance reported when the king is further from the edge than
+     *  MAX_DISTANCE moves, or cannot reach it at all. */
+    static final int FAR = MAX_DISTANCE + 1;
+
+    /** Return the fewest king moves that would take the king on BOARD to
+     *  the edge with no intervening BLACK move: 0 if it is on the edge,
+     *  and FAR if that would take more than MAX_DISTANCE moves or there
+     *  is no king. */
+    int distance(Board board) {
+        return lookup(board) & DISTANCE_MASK;
+    }
+
+    /** Return the number of directions in which the king on BOARD has a
+     *  clear line to the edge (0 if there is no king).  With two or more,
+     *  BLACK cannot block them all in one move. */
+    int openLines(Board board) {
+        return lookup(board) >>> LINES_SHIFT & LINES_MASK;
+    }
+
+    /** Return true iff the square with index INDEX lies on one of the
+     *  king's open lines to the edge on BOARD, so that a piece moved
+     *  there would block it. */
+    boolean blocks(Board board, int index) {
+        Square king = board.kingPosition();
+        if (king == null || !king.isRookMove(sq(index))) {
+            return false;
+        }
+        int[] ray = ROOK_RAYS[king.index()][king.direction(sq(index))];
+        for (int t : ray) {
+            if (board.get(t) != EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the encoded analysis of BOARD, from the cache if
+     *  possible. */
+    private int lookup(Board board) {
+        long key = board.hash();
+        int i = (int) (key ^ key >>> 32) & (CACHE_SIZE - 1);
+        if (_keys[i] != key || _values[i] == 0) {
+            _keys[i] = key;
+            _values[i] = analyze(board);
+        }
+        return _values[i];
+    }
+
+    /** Return the analysis of BOARD, encoded with its distance in the low
+     *  bits, then its number of open lines, and the VALID bit. */
+    private int analyze(Board board) {
+        Square king = board.kingPosition();
+        if (king == null) {
+            return FAR | VALID;
+        }
+        int k = king.index();
+        int lines = board.openLines(k, -1);
+        int distance = king.isEdge() ? 0 : lines > 0 ? 1 : search(board, k);
+        return distance | lines << LINES_SHIFT | VALID;
+    }
+
+    /** Return the fewest king moves from the square with index KING to
+     *  the edge on BOARD, or FAR, by a breadth-first search along the
+     *  rook rays of Square.ROOK_SQUARES (as ROOK_RAYS) that stops after
+     *  MAX_DISTANCE moves. */
+    private int search(Board board, int king) {
+        long seenLo = loBit(king), seenHi = hiBit(king);
+        int[] frontier = _frontier, next = _next;
+        frontier[0] = king;
+        int size = 1;
+        for (int distance = 1; distance <= MAX_DISTANCE; distance += 1) {
+            int nextSize = 0;
+            for (int j = 0; j < size; j += 1) {
+                for (int d = 0; d < 4; d += 1) {
+                    for (int t : ROOK_RAYS[frontier[j]][d]) {
+                        if (t != king && board.get(t) != EMPTY) {
+                            break;
+                        } else if (sq(t).isEdge()) {
+                            return distance;
+                        } else if (!hasBit(seenLo, seenHi, t)) {
+                            seenLo |= loBit(t);
+                            seenHi |= hiBit(t);
+                            next[nextSize] = t;
+                            nextSize += 1;
+                        }
+                    }
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            size = nextSize;
+        }
+        return FAR;
+    }
+
+    /** Layout of an encoded analysis. */
+    private static final int
+        DISTANCE_MASK = 7, LINES_SHIFT = 3, LINES_MASK = 7, VALID = 1 << 6;
+
+    /** Number of cache entries (a power of two). */
+    private static final int CACHE_SIZE = 1 << 14;
+
+    /** Keys of the positions whose analyses are in _values. */
+    private final long[] _keys = new long[CACHE_SIZE];
+    /** Encoded analyses (0 for an empty entry). */
+    private final int[] _values = new int[CACHE_SIZE];
+    /** Scratch space for search: the squares reached by the last and
+     *  next numbers of moves. */
+    private final int[] _frontier = new int[NUM_SQUARES],
+        _next = new int[NUM_SQUARES];
+}
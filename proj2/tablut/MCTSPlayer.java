@@ -0,0 +1,273 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A Player that chooses moves by Monte Carlo tree search: it plays many
+ *  games to the end with random moves (playouts), grows a tree of the
+ *  positions they start from, and plays the move whose subtree was
+ *  explored most.  Within the tree, moves are chosen by UCT, which
+ *  balances each move's winning rate against how rarely it has been
+ *  tried.
+ *
+ *  The tree lives in an arena of parallel arrays indexed by node number,
+ *  allocated once, so growing it allocates nothing.  The children of a
+ *  node are consecutive.  Several threads may search the same tree: each
+ *  counts a visit to a node as it descends (a virtual loss, until the
+ *  playout's result is added), which steers the other threads toward
+ *  other moves, and a node is expanded by whichever thread claims it
+ *  first.
+ *  @author Michael Chien
+ */
+class MCTSPlayer extends Player {
+
+    /** A new player with no piece or controller (intended to produce a
+     *  template). */
+    MCTSPlayer() {
+        this(new SearchOptions());
+    }
+
+    /** A new player template whose players search according to
+     *  OPTIONS. */
+    MCTSPlayer(SearchOptions options) {
+        this(null, null, options);
+    }
+
+    /** A new player playing PIECE under control of CONTROLLER, searching
+     *  according to OPTIONS. */
+    MCTSPlayer(Piece piece, Controller controller, SearchOptions options) {
+        super(piece, controller);
+        _options = options;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller, _options);
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove(new Board(board()));
+        if (move == null) {
+            return null;
+        }
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    /** Return a move for the side to move on BOARD, or null if it has
+     *  none (or the root cannot be expanded for lack of space), after
+     *  searching for my options' move time, or until my options'
+     *  number of playouts, if any, have been played.  BOARD is restored
+     *  before returning. */
+    Move findMove(Board board) {
+        if (_visits == null) {
+            int size = (int) Math.min((long) _options.hashSize() * (1 << 20)
+                                      / NODE_BYTES, Integer.MAX_VALUE);
+            _moves = new int[size];
+            _firstChild = new int[size];
+            _childCount = new int[size];
+            _visits = new AtomicIntegerArray(size);
+            _wins = new AtomicIntegerArray(size);
+            _state = new AtomicIntegerArray(size);
+        }
+        _size.set(1);
+        _visits.set(ROOT, 0);
+        _wins.set(ROOT, 0);
+        _childCount[ROOT] = 0;
+        _state.set(ROOT, LEAF);
+        _playouts.set(0);
+        _deadline = System.currentTimeMillis() + _options.moveTime();
+        Thread[] threads = new Thread[_options.threads() - 1];
+        for (int k = 0; k < threads.length; k += 1) {
+            Board copy = new Board(board);
+            Playout kernel = new Playout(PLAYOUT_LIMIT, k + 1);
+            threads[k] = new Thread(() -> work(copy, kernel));
+            threads[k].setDaemon(true);
+            threads[k].start();
+        }
+        work(board, new Playout(PLAYOUT_LIMIT, 0));
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (_state.get(ROOT) != EXPANDED) {
+            expand(ROOT, board, new int[Board.MAX_MOVES]);
+        }
+        if (_state.get(ROOT) != EXPANDED || _childCount[ROOT] == 0) {
+            return null;
+        }
+        int best = _firstChild[ROOT];
+        for (int k = 1; k < _childCount[ROOT]; k += 1) {
+            int child = _firstChild[ROOT] + k;
+            if (_visits.get(child) > _visits.get(best)) {
+                best = child;
+            }
+        }
+        return Move.mv(_moves[best]);
+    }
+
+    /** Return the number of playouts made by the last call to
+     *  findMove. */
+    long playouts() {
+        long budget = _options.playouts();
+        return budget > 0 ? Math.min(budget, _playouts.get())
+            : _playouts.get();
+    }
+
+    /** Search from BOARD, making playouts with KERNEL, until time or my
+     *  playout budget runs out.  BOARD is restored before returning. */
+    private void work(Board board, Playout kernel) {
+        int[] path = new int[MAX_DEPTH + 1];
+        int[] moves = new int[Board.MAX_MOVES];
+        Piece rootTurn = board.turn();
+        long budget = _options.playouts();
+        while (budget > 0 ? _playouts.getAndIncrement() < budget
+               : System.currentTimeMillis() < _deadline) {
+            int node = ROOT, depth = 0;
+            path[0] = ROOT;
+            _visits.incrementAndGet(ROOT);
+            while (board.winner() == null && depth < MAX_DEPTH) {
+                if (_state.get(node) != EXPANDED
+                    && (_visits.get(node) <= EXPAND_VISITS
+                        || !expand(node, board, moves))
+                    || _childCount[node] == 0) {
+                    break;
+                }
+                node = select(node);
+                board.makeMove(_moves[node]);
+                depth += 1;
+                path[depth] = node;
+                _visits.incrementAndGet(node);
+            }
+            Piece winner = board.winner();
+            if (winner == null) {
+                kernel.setPosition(board);
+                kernel.play();
+                winner = kernel.winner();
+            }
+            for (int d = depth; d > 0; d -= 1) {
+                Piece mover = d % 2 == 1 ? rootTurn : rootTurn.opponent();
+                _wins.addAndGet(path[d], winner == null ? 1
+                                : winner.side() == mover ? 2 : 0);
+                board.undo();
+            }
+            if (budget == 0) {
+                _playouts.incrementAndGet();
+            }
+        }
+    }
+
+    /** Return the child of NODE (which is expanded) with the best UCT
+     *  score: its winning rate for the side that moves to it, plus a bonus
+     *  that shrinks as it is visited more often than its siblings.  The
+     *  first child not yet visited is chosen before any other. */
+    private int select(int node) {
+        int first = _firstChild[node], n = _childCount[node];
+        double logParent = Math.log(Math.max(1, _visits.get(node)));
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + n; child += 1) {
+            int visits = _visits.get(child);
+            if (visits == 0) {
+                return child;
+            }
+            double score = _wins.get(child) / (2.0 * visits)
+                + EXPLORATION * Math.sqrt(logParent / visits);
+            if (score > bestScore) {
+                best = child;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Try to add the children of NODE, whose position is on BOARD, to the
+     *  tree, using MOVES as scratch space.  Return true if NODE is then
+     *  expanded (with no children if there are no legal moves), and false
+     *  if another thread is expanding it or the arena is full. */
+    private boolean expand(int node, Board board, int[] moves) {
+        if (!_state.compareAndSet(node, LEAF, EXPANDING)) {
+            return false;
+        }
+        int n = board.legalMoves(board.turn(), moves);
+        int first = _size.get() + n > _visits.length() ? -1
+            : _size.getAndAdd(n);
+        if (first < 0 || first + n > _visits.length()) {
+            _state.set(node, LEAF);
+            return false;
+        }
+        for (int k = 0; k < n; k += 1) {
+            int child = first + k;
+            _moves[child] = moves[k];
+            _childCount[child] = 0;
+            _visits.set(child, 0);
+            _wins.set(child, 0);
+            _state.set(child, LEAF);
+        }
+        _firstChild[node] = first;
+        _childCount[node] = n;
+        _state.set(node, EXPANDED);
+        return true;
+    }
+
+    /** Node states: no children yet, children being added by some
+     *  thread, and children added (or none possible). */
+    private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2;
+
+    /** The node for the position searched. */
+    private static final int ROOT = 0;
+
+    /** Bytes of arena per node. */
+    private static final int NODE_BYTES = 24;
+
+    /** Deepest the tree is searched below the root. */
+    private static final int MAX_DEPTH = 128;
+
+    /** Most moves in a playout. */
+    private static final int PLAYOUT_LIMIT = 200;
+
+    /** A leaf is expanded when visited more than this many times. */
+    private static final int EXPAND_VISITS = 1;
+
+    /** Weight of the exploration term in UCT scores. */
+    private static final double EXPLORATION = 1.4;
+
+    /** My search settings. */
+    private final SearchOptions _options;
+
+    /** Arena: _moves[k] is the code of the move leading to node k. */
+    private int[] _moves;
+    /** _firstChild[k] is the first child of node k, if expanded. */
+    private int[] _firstChild;
+    /** _childCount[k] is the number of children of node k, if
+     *  expanded. */
+    private int[] _childCount;
+    /** _visits[k] is the number of playouts through node k, including
+     *  those in progress. */
+    private AtomicIntegerArray _visits;
+    /** _wins[k] is the number of half-points won by the side that moves
+     *  to node k in the finished playouts through it (two for a win, one
+     *  for a game unfinished at PLAYOUT_LIMIT). */
+    private AtomicIntegerArray _wins;
+    /** _state[k] is the state (LEAF, EXPANDING, or EXPANDED) of node
+     *  k. */
+    private AtomicIntegerArray _state;
+    /** Number of nodes in use in the arena. */
+    private final AtomicInteger _size = new AtomicInteger();
+
+    /** Number of playouts started in the current search. */
+    private final AtomicLong _playouts = new AtomicLong();
+    /** Time (System.currentTimeMillis()) at which the current search
+     *  stops. */
+    private volatile long _deadline;
+}
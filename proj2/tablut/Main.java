@@ -19,14 +19,36 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --time=(\\d+){0,1} --gametime=(\\d+){0,1}"
+                            + " --hash=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --depth=(\\d+){0,1} --split --speedup"
+                            + " --book={0,1} --tablebase={0,1} --ponder"
+                            + " --stats --perft=(\\d+){0,1}"
+                            + " --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--time=MSEC]"
+                               + " [--gametime=MSEC] [--hash=MBYTES]"
+                               + " [--threads=N] [--split] [--depth=N]"
+                               + " [--speedup] [--book=FILE]"
+                               + " [--tablebase=DIR] [--ponder] [--stats]"
+                               + " [--perft=N]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
+        if (options.contains("--speedup")) {
+            reportSpeedup(getSearchOptions(options));
+            System.exit(0);
+        }
+
+        if (options.contains("--perft")) {
+            reportPerft(options);
+            System.exit(0);
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -96,7 +118,115 @@ public class Main {
             }
         }
 
+        SearchOptions searchOptions = getSearchOptions(options);
         return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+                              new AI(searchOptions),
+                              new MCTSPlayer(searchOptions),
+                              options.contains("--strict"));
     }
+
+    /** Return the AI settings indicated by OPTIONS. */
+    private static SearchOptions getSearchOptions(CommandArgs options) {
+        SearchOptions result = new SearchOptions();
+        result.setSplitRoot(options.contains("--split"));
+        result.setPonder(options.contains("--ponder"));
+        result.setStats(options.contains("--stats"));
+        try {
+            if (options.contains("--time")) {
+                result.setMoveTime(Long.parseLong(options.getFirst("--time")));
+            }
+            if (options.contains("--gametime")) {
+                result.setGameTime(Long.parseLong(
+                                       options.getFirst("--gametime")));
+            }
+            if (options.contains("--hash")) {
+                result.setHashSize(Integer.parseInt(
+                                       options.getFirst("--hash")));
+            }
+            if (options.contains("--threads")) {
+                result.setThreads(Integer.parseInt(
+                                      options.getFirst("--threads")));
+            }
+            if (options.contains("--depth")) {
+                result.setDepth(Integer.parseInt(
+                                    options.getFirst("--depth")));
+            }
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (options.contains("--book")) {
+            try {
+                result.setBook(new OpeningBook(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not open opening book");
+            }
+        }
+        if (options.contains("--tablebase")) {
+            try {
+                result.setTablebase(
+                    new Tablebase(options.getFirst("--tablebase")));
+            } catch (IOException excp) {
+                throw error("Could not open tablebases");
+            }
+        }
+        return result;
+    }
+
+    /** Print the time a search of the initial position to the depth in
+     *  OPTIONS (or SPEEDUP_DEPTH if none) takes with one thread and with
+     *  the number of threads in OPTIONS, and the ratio of the two. */
+    private static void reportSpeedup(SearchOptions options) {
+        SearchOptions parallel = new SearchOptions(options);
+        parallel.setMoveTime(Integer.MAX_VALUE);
+        parallel.setGameTime(0);
+        if (parallel.depth() == 0) {
+            parallel.setDepth(SPEEDUP_DEPTH);
+        }
+        SearchOptions serial = new SearchOptions(parallel);
+        serial.setThreads(1);
+        long serialTime = timeSearch(serial),
+            parallelTime = timeSearch(parallel);
+        System.out.printf("Depth %d: 1 thread %d ms, %d threads %d ms,"
+                          + " speedup %.2f%n", parallel.depth(), serialTime,
+                          parallel.threads(), parallelTime,
+                          (double) serialTime / Math.max(1, parallelTime));
+    }
+
+    /** Print the perft counts (see Perft) from the initial position to the
+     *  depth given by the --perft option in OPTIONS, using the number of
+     *  threads given by --threads and a cache of the size given by --hash
+     *  (none if absent). */
+    private static void reportPerft(CommandArgs options) {
+        try {
+            int depth = Integer.parseInt(options.getFirst("--perft"));
+            Perft perft =
+                new Perft(Integer.parseInt(options.getFirst("--threads",
+                                                            "1")),
+                          Integer.parseInt(options.getFirst("--hash", "0")));
+            perft.count(new Board(), depth);
+            perft.print(System.out, depth);
+        } catch (NumberFormatException excp) {
+            System.err.println("number too large");
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the time in milliseconds an AI searching according to
+     *  OPTIONS takes to choose a first move, printing statistics on its
+     *  search. */
+    private static long timeSearch(SearchOptions options) {
+        AI ai = new AI(options);
+        long start = System.currentTimeMillis();
+        ai.findMove(new Board());
+        long time = System.currentTimeMillis() - start;
+        System.out.printf("%d thread(s): %s%n", options.threads(),
+                          ai.stats());
+        return time;
+    }
+
+    /** Default depth for --speedup. */
+    private static final int SPEEDUP_DEPTH = 5;
 }
@@ -0,0 +1,430 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static tablut.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** Plays many games between two AI configurations, A and B, to tell
+ *  whether A is stronger.  Games run concurrently, one per thread, on
+ *  their own Boards, with no Controller, View, or Reporter.  Each game
+ *  starts from an opening (a short sequence of moves), and each opening
+ *  is played twice, with A taking each side once.  A side left with no
+ *  legal move loses, and a game with no winner after MAX_GAME_PLIES
+ *  plies is a draw.
+ *
+ *  The result is reported as A's score and the Elo difference it
+ *  implies, with a 95% confidence interval.  A sequential probability
+ *  ratio test (SPRT) may stop the match early: after each game it weighs
+ *  the hypothesis that A is ELO1 stronger than B against the hypothesis
+ *  that it is only ELO0 stronger, and stops as soon as either is
+ *  accepted at the requested error rates.  It uses the usual normal
+ *  approximation to the log-likelihood ratio of the game results.
+ *  @author Michael Chien
+ */
+class Match {
+
+    /** Play a match as described by ARGS (see the usage message).  An
+     *  engine SPEC is a comma-separated list of NAME=VALUE settings,
+     *  where NAME is one of time, depth, hash, nullmove, nullreduction,
+     *  nullpieces, lmr, lmrdepth, lmrindex, futility, and margin (see
+     *  SearchOptions; 0 and 1 stand for off and on). */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --openings={0,1} --seed=(\\d+){0,1}"
+                            + " --a={0,1} --b={0,1} --elo0={0,1}"
+                            + " --elo1={0,1} --alpha={0,1} --beta={0,1}"
+                            + " --sprt",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.Match [--games=N]"
+                               + " [--threads=N] [--openings=FILE]"
+                               + " [--seed=N] [--a=SPEC] [--b=SPEC]"
+                               + " [--sprt] [--elo0=E] [--elo1=E]"
+                               + " [--alpha=P] [--beta=P]");
+            System.exit(1);
+        }
+        try {
+            Match match = new Match(
+                engine(options.getFirst("--a", "")),
+                engine(options.getFirst("--b", "")),
+                Integer.parseInt(options.getFirst(
+                    "--threads",
+                    Integer.toString(Runtime.getRuntime()
+                                     .availableProcessors()))));
+            if (options.contains("--openings")) {
+                try (BufferedReader in = new BufferedReader(
+                         new FileReader(options.getFirst("--openings")))) {
+                    match.addOpenings(in);
+                }
+            } else {
+                match.addRandomOpenings(
+                    DEFAULT_OPENINGS,
+                    new Random(Long.parseLong(
+                                   options.getFirst("--seed", "0"))));
+            }
+            if (options.contains("--sprt")) {
+                match.setSprt(
+                    Double.parseDouble(options.getFirst("--elo0", "0")),
+                    Double.parseDouble(options.getFirst("--elo1", "5")),
+                    Double.parseDouble(options.getFirst("--alpha", "0.05")),
+                    Double.parseDouble(options.getFirst("--beta", "0.05")));
+            }
+            match.play(Integer.parseInt(options.getFirst("--games", "100")),
+                       System.out);
+        } catch (NumberFormatException excp) {
+            System.err.println("number too large");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not read openings: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the search settings described by SPEC (see main). */
+    static SearchOptions engine(String spec) {
+        SearchOptions result = new SearchOptions();
+        result.setMoveTime(DEFAULT_MOVE_TIME);
+        for (String setting : spec.split(",")) {
+            if (setting.isEmpty()) {
+                continue;
+            }
+            String[] parts = setting.split("=", 2);
+            if (parts.length != 2) {
+                throw Utils.error("bad engine setting: %s", setting);
+            }
+            String name = parts[0].trim();
+            int value;
+            try {
+                value = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException excp) {
+                throw Utils.error("bad engine setting: %s", setting);
+            }
+            switch (name) {
+            case "time":
+                result.setMoveTime(value);
+                break;
+            case "depth":
+                result.setDepth(value);
+                break;
+            case "hash":
+                result.setHashSize(value);
+                break;
+            case "nullmove":
+                result.setNullMove(value != 0);
+                break;
+            case "nullreduction":
+                result.setNullMoveReduction(value);
+                break;
+            case "nullpieces":
+                result.setNullMoveMinPieces(value);
+                break;
+            case "lmr":
+                result.setLateMoveReduction(value != 0);
+                break;
+            case "lmrdepth":
+                result.setLateMoveDepth(value);
+                break;
+            case "lmrindex":
+                result.setLateMoveIndex(value);
+                break;
+            case "futility":
+                result.setFutility(value != 0);
+                break;
+            case "margin":
+                result.setFutilityMargin(value);
+                break;
+            default:
+                throw Utils.error("unknown engine setting: %s", name);
+            }
+        }
+        return result;
+    }
+
+    /** A match between AIs searching according to A and B, playing
+     *  THREADS games at a time.  It has no openings until some are
+     *  added. */
+    Match(SearchOptions a, SearchOptions b, int threads) {
+        if (threads <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _a = a;
+        _b = b;
+        _threads = threads;
+    }
+
+    /** Add the openings in OPENINGS, one per line, each a sequence of
+     *  moves from the initial position separated by blanks.  Blank lines
+     *  and comments (from "#" to the end of a line) are ignored. */
+    void addOpenings(BufferedReader openings) throws IOException {
+        for (String line = openings.readLine(); line != null;
+             line = openings.readLine()) {
+            String text = line.replaceFirst("#.*", "").trim().toLowerCase();
+            if (text.isEmpty()) {
+                continue;
+            }
+            String[] words = text.split("\\s+");
+            int[] moves = new int[words.length];
+            Board board = new Board();
+            for (int k = 0; k < words.length; k += 1) {
+                Move move = Move.isGrammaticalMove(words[k])
+                    ? Move.mv(words[k]) : null;
+                if (move == null || board.winner() != null
+                    || !board.isLegal(move)) {
+                    throw Utils.error("illegal opening move: %s", words[k]);
+                }
+                board.makeMove(move);
+                moves[k] = board.lastMove();
+            }
+            _openings.add(moves);
+        }
+    }
+
+    /** Add N openings of RANDOM_PLIES random moves each, chosen using
+     *  RANDOM. */
+    void addRandomOpenings(int n, Random random) {
+        int[] buffer = new int[Board.MAX_MOVES];
+        for (int k = 0; k < n; k += 1) {
+            Board board = new Board();
+            int[] moves = new int[RANDOM_PLIES];
+            for (int p = 0; p < RANDOM_PLIES; p += 1) {
+                int count = board.legalMoves(board.turn(), buffer);
+                moves[p] = buffer[random.nextInt(count)];
+                board.makeMove(moves[p]);
+            }
+            _openings.add(moves);
+        }
+    }
+
+    /** Stop the match early when a sequential probability ratio test
+     *  accepts either the hypothesis that A is ELO1 stronger than B or
+     *  the hypothesis that it is ELO0 stronger, with false-positive rate
+     *  ALPHA and false-negative rate BETA. */
+    void setSprt(double elo0, double elo1, double alpha, double beta) {
+        if (elo0 >= elo1 || alpha <= 0 || alpha >= 1
+            || beta <= 0 || beta >= 1) {
+            throw Utils.error("bad SPRT parameters");
+        }
+        _sprt = true;
+        _elo0 = elo0;
+        _elo1 = elo1;
+        _lowerBound = Math.log(beta / (1 - alpha));
+        _upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /** Play up to GAMES games, cycling through my openings, and report
+     *  progress and the result on OUT.  Stops early if my SPRT, if any,
+     *  reaches a decision. */
+    void play(int games, PrintStream out) {
+        if (_openings.isEmpty()) {
+            throw Utils.error("no openings");
+        }
+        _wins = _draws = _losses = 0;
+        _decision = null;
+        _stopped = false;
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        CompletionService<Integer> results =
+            new ExecutorCompletionService<>(pool);
+        try {
+            for (int g = 0; g < games; g += 1) {
+                int[] opening = _openings.get(g / 2 % _openings.size());
+                boolean white = g % 2 == 0;
+                results.submit(() -> playGame(opening, white));
+            }
+            for (int g = 0; g < games && _decision == null; g += 1) {
+                record(results.take().get());
+                if (_sprt) {
+                    double llr = llr();
+                    if (llr >= _upperBound) {
+                        _decision = "H1 accepted";
+                    } else if (llr <= _lowerBound) {
+                        _decision = "H0 accepted";
+                    }
+                }
+                if ((g + 1) % REPORT_INTERVAL == 0 && _decision == null) {
+                    out.println(summary());
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            _stopped = true;
+            pool.shutdownNow();
+        }
+        out.println(summary());
+    }
+
+    /** Return the number of games A won, drew, and lost in the last
+     *  match, as an array of three counts. */
+    int[] results() {
+        return new int[] { _wins, _draws, _losses };
+    }
+
+    /** Return the decision of the last match's SPRT ("H1 accepted" or "H0
+     *  accepted"), or null if it reached none. */
+    String decision() {
+        return _decision;
+    }
+
+    /** Return a one-line summary of the match so far. */
+    String summary() {
+        int n = _wins + _draws + _losses;
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Games %d: A %d-%d-%d (W-D-L)", n,
+                                    _wins, _draws, _losses));
+        if (n > 0) {
+            double score = (_wins + 0.5 * _draws) / n;
+            double margin = 1.96 * Math.sqrt(variance() / n);
+            result.append(String.format(", score %.1f%%, Elo %+.1f"
+                                        + " [%+.1f, %+.1f]",
+                                        100 * score, elo(score),
+                                        elo(score - margin),
+                                        elo(score + margin)));
+        }
+        if (_sprt) {
+            result.append(String.format(", LLR %.2f [%.2f, %.2f]", llr(),
+                                        _lowerBound, _upperBound));
+        }
+        if (_decision != null) {
+            result.append(", ").append(_decision);
+        }
+        return result.toString();
+    }
+
+    /** Return the Elo difference implied by an expected score of SCORE
+     *  (clamped to a finite range). */
+    static double elo(double score) {
+        double s = Math.min(Math.max(score, SCORE_CLAMP), 1 - SCORE_CLAMP);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    /** Return the expected score of a player ELO stronger than its
+     *  opponent. */
+    static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Return the log-likelihood ratio of the hypothesis that A is _elo1
+     *  stronger than B to the hypothesis that it is _elo0 stronger, given
+     *  the results so far. */
+    double llr() {
+        int n = _wins + _draws + _losses;
+        double variance = variance();
+        if (n == 0 || variance == 0) {
+            return 0;
+        }
+        double mean = (_wins + 0.5 * _draws) / n;
+        double s0 = score(_elo0), s1 = score(_elo1);
+        return n * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+    }
+
+    /** Return the variance of A's score per game so far. */
+    private double variance() {
+        int n = _wins + _draws + _losses;
+        if (n == 0) {
+            return 0;
+        }
+        double mean = (_wins + 0.5 * _draws) / n;
+        return (_wins * (1 - mean) * (1 - mean)
+                + _draws * (0.5 - mean) * (0.5 - mean)
+                + _losses * mean * mean) / n;
+    }
+
+    /** Play one game from OPENING, with A playing white iff AISWHITE, and
+     *  return A's result: WIN, DRAW, or LOSS. */
+    private int playGame(int[] opening, boolean aIsWhite) {
+        Board board = new Board();
+        for (int move : opening) {
+            board.makeMove(move);
+        }
+        return playGame(board, aIsWhite);
+    }
+
+    /** Finish the game on BOARD, with A playing white iff AISWHITE, and
+     *  return A's result: WIN, DRAW, or LOSS.  A side left with no legal
+     *  move loses. */
+    int playGame(Board board, boolean aIsWhite) {
+        AI white = new AI(aIsWhite ? _a : _b),
+            black = new AI(aIsWhite ? _b : _a);
+        while (board.winner() == null
+               && board.moveCount() < MAX_GAME_PLIES && !_stopped
+               && board.hasMove(board.turn())) {
+            AI player = board.turn() == WHITE ? white : black;
+            board.makeMove(player.findMove(board));
+        }
+        Piece winner = board.winner();
+        if (winner == null) {
+            return DRAW;
+        }
+        return (winner == WHITE) == aIsWhite ? WIN : LOSS;
+    }
+
+    /** Count a game whose result for A was RESULT. */
+    private void record(int result) {
+        if (result == WIN) {
+            _wins += 1;
+        } else if (result == LOSS) {
+            _losses += 1;
+        } else {
+            _draws += 1;
+        }
+    }
+
+    /** Results of a game, from A's side. */
+    static final int WIN = 1, DRAW = 0, LOSS = -1;
+
+    /** Most plies in one game. */
+    static final int MAX_GAME_PLIES = 200;
+
+    /** Number of moves in each random opening. */
+    static final int RANDOM_PLIES = 4;
+
+    /** Number of random openings used when none are given. */
+    private static final int DEFAULT_OPENINGS = 100;
+
+    /** Default time per move, in milliseconds, for engines. */
+    private static final long DEFAULT_MOVE_TIME = 100;
+
+    /** Number of games between progress reports. */
+    private static final int REPORT_INTERVAL = 10;
+
+    /** Scores are kept this far from 0 and 1 when converted to Elo. */
+    private static final double SCORE_CLAMP = 1e-3;
+
+    /** Search settings of the two engines. */
+    private final SearchOptions _a, _b;
+    /** Number of games played at once. */
+    private final int _threads;
+    /** The openings, as move codes. */
+    private final List<int[]> _openings = new ArrayList<>();
+    /** True iff matches stop early by SPRT. */
+    private boolean _sprt;
+    /** The SPRT's hypotheses (Elo differences) and its bounds on the
+     *  log-likelihood ratio. */
+    private double _elo0, _elo1, _lowerBound, _upperBound;
+    /** Results of the current match, from A's side. */
+    private int _wins, _draws, _losses;
+    /** The SPRT's decision in the current match, or null. */
+    private String _decision;
+    /** True when games still running should be abandoned. */
+    private volatile boolean _stopped;
+}
@@ -48,6 +48,11 @@ final class Move {
         return MOVES[from.index()][to.index()];
     }
 
+    /** Return the unique Move whose code (see code()) is CODE. */
+    static Move mv(int code) {
+        return mv(sq(code / NUM_SQUARES), sq(code % NUM_SQUARES));
+    }
+
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
@@ -71,6 +76,22 @@ final class Move {
         return _moveMatcher.matches();
     }
 
+    /** Return my int encoding, from().index() * NUM_SQUARES + to().index().
+     *  Search code passes moves around in this form. */
+    int code() {
+        return _from.index() * NUM_SQUARES + _to.index();
+    }
+
+    /** Return the index of the square moved from by the move coded CODE. */
+    static int fromIndex(int code) {
+        return code / NUM_SQUARES;
+    }
+
+    /** Return the index of the square moved to by the move coded CODE. */
+    static int toIndex(int code) {
+        return code % NUM_SQUARES;
+    }
+
     @Override
     public String toString() {
         return _str;
@@ -0,0 +1,130 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** A read-only opening book: a table of moves known from earlier games,
+ *  each with the position (Board.hash()) it was played from, a weight,
+ *  and the results of the games in which it was played.  The book is a
+ *  single binary file (written by BookBuilder) of fixed-size records
+ *  sorted by position key and then move, preceded by a short header.
+ *  The file is mapped into memory rather than read, so opening a book
+ *  costs nothing in proportion to its size, and a lookup is a binary
+ *  search of the mapping that allocates nothing.  Any number of threads
+ *  may look up moves at once.
+ *  @author Michael Chien
+ */
+final class OpeningBook {
+
+    /** The book in the file named NAME.  Throws IOException if the file
+     *  cannot be read, and IllegalArgumentException if it is not a
+     *  book. */
+    OpeningBook(String name) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw Utils.error("opening book %s is too large", name);
+            }
+            _records = channel.map(FileChannel.MapMode.READ_ONLY,
+                                   0, channel.size());
+        }
+        if (_records.capacity() < HEADER_BYTES
+            || _records.getInt(0) != MAGIC
+            || _records.getInt(VERSION_OFFSET) != VERSION
+            || _records.capacity() != HEADER_BYTES
+                + (long) _records.getInt(SIZE_OFFSET) * RECORD_BYTES) {
+            throw Utils.error("%s is not an opening book", name);
+        }
+        _size = _records.getInt(SIZE_OFFSET);
+    }
+
+    /** Return the number of moves in this book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the code of the book move with the greatest weight from the
+     *  position on BOARD that is legal there, or 0 if there is none. */
+    int move(Board board) {
+        long key = board.hash();
+        int best = 0, bestWeight = Integer.MIN_VALUE;
+        for (int r = first(key); r < _size && key(r) == key; r += 1) {
+            int move = move(r);
+            Move m = Move.mv(move);
+            if (weight(r) > bestWeight && m != null && board.isLegal(m)) {
+                best = move;
+                bestWeight = weight(r);
+            }
+        }
+        return best;
+    }
+
+    /** Return the index of the first record whose key is at least KEY
+     *  (_size if there is none).  Keys are compared as signed numbers,
+     *  in the order in which BookBuilder sorts them. */
+    private int first(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the position key of record R. */
+    private long key(int r) {
+        return _records.getLong(offset(r));
+    }
+
+    /** Return the move code of record R. */
+    private int move(int r) {
+        return _records.getInt(offset(r) + MOVE_OFFSET);
+    }
+
+    /** Return the weight of record R. */
+    private int weight(int r) {
+        return _records.getInt(offset(r) + WEIGHT_OFFSET);
+    }
+
+    /** Return the byte offset of record R. */
+    private static int offset(int r) {
+        return HEADER_BYTES + r * RECORD_BYTES;
+    }
+
+    /** Write the header of a book of SIZE records to OUT. */
+    static void putHeader(ByteBuffer out, int size) {
+        out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0);
+    }
+
+    /** Write a record to OUT for the move with code MOVE from the
+     *  position with key KEY, with weight WEIGHT, played in GAMES games,
+     *  WINS of them won by the side that played it. */
+    static void putRecord(ByteBuffer out, long key, int move, int weight,
+                          int games, int wins) {
+        out.putLong(key).putInt(move).putInt(weight)
+            .putInt(games).putInt(wins);
+    }
+
+    /** Layout of the header: a magic number identifying book files, the
+     *  format version, the number of records, and an unused word. */
+    static final int
+        MAGIC = 0x54424f4b, VERSION = 1,
+        VERSION_OFFSET = 4, SIZE_OFFSET = 8, HEADER_BYTES = 16;
+
+    /** Layout of a record: the position key, then the move code, weight,
+     *  number of games, and number of wins. */
+    static final int
+        MOVE_OFFSET = 8, WEIGHT_OFFSET = 12, RECORD_BYTES = 24;
+
+    /** The contents of the book file. */
+    private final MappedByteBuffer _records;
+    /** Number of records. */
+    private final int _size;
+}
@@ -0,0 +1,217 @@
+package tablut;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Counts the positions reachable from a position in a given number of
+ *  moves (perft), to check Board's move generator against known counts
+ *  and to measure its speed.  The count is the number of leaves of the
+ *  tree of legal moves to the given depth: a position in which the game
+ *  is over, by a win, a repetition, or a lack of moves, has no children.
+ *  The count is divided by root move.
+ *
+ *  The root moves may be divided among several threads, each searching
+ *  its own copy of the board.  The threads may share a cache of subtree
+ *  counts, stored like TranspositionTable's entries so that it needs no
+ *  locking.  Because a repetition ends the game, a subtree's count
+ *  depends in general on the moves that led to it; only positions just
+ *  after a capture, which no earlier position can repeat, are cached, so
+ *  that the counts are exact.  Positions one move from the leaves are
+ *  counted by counting their moves, without making them.
+ *  @author Michael Chien
+ */
+final class Perft {
+
+    /** A counter using THREADS threads and a cache of at most MEGABYTES
+     *  megabytes (none if 0). */
+    Perft(int threads, int megabytes) {
+        if (threads <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _threads = threads;
+        if (megabytes > 0) {
+            long entries = (long) megabytes * (1 << 20) / ENTRY_BYTES;
+            int size = Integer.highestOneBit(
+                (int) Math.min(entries, MAX_ENTRIES));
+            _keys = new long[size];
+            _data = new long[size];
+        } else {
+            _keys = _data = null;
+        }
+    }
+
+    /** Return the number of leaves of the tree of legal moves from BOARD
+     *  to DEPTH plies, recording the count for each root move.  BOARD is
+     *  restored before returning. */
+    long count(Board board, int depth) {
+        if (depth < 0) {
+            throw Utils.error("perft depth must not be negative");
+        }
+        long start = System.currentTimeMillis();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.winner() != null || depth == 0 ? 0
+            : board.legalMoves(board.turn(), moves);
+        _rootMoves = new int[n];
+        _rootCounts = new long[n];
+        System.arraycopy(moves, 0, _rootMoves, 0, n);
+        if (_threads > 1 && n > 1) {
+            ForkJoinPool pool = new ForkJoinPool(_threads);
+            try {
+                RootTask[] tasks = new RootTask[n];
+                for (int k = 0; k < n; k += 1) {
+                    tasks[k] = new RootTask(board, k, depth);
+                    pool.execute(tasks[k]);
+                }
+                for (RootTask task : tasks) {
+                    task.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            int[][] buffers = new int[Math.max(1, depth)][Board.MAX_MOVES];
+            for (int k = 0; k < n; k += 1) {
+                board.makeMove(_rootMoves[k]);
+                _rootCounts[k] = count(board, depth - 1, buffers);
+                board.undo();
+            }
+        }
+        _total = depth == 0 ? 1 : 0;
+        for (long count : _rootCounts) {
+            _total += count;
+        }
+        _time = System.currentTimeMillis() - start;
+        return _total;
+    }
+
+    /** Return the number of root moves in the last count. */
+    int rootMoves() {
+        return _rootMoves.length;
+    }
+
+    /** Return the code (see Move.code()) of root move #K in the last
+     *  count. */
+    int rootMove(int k) {
+        return _rootMoves[k];
+    }
+
+    /** Return the number of leaves below root move #K in the last
+     *  count. */
+    long rootCount(int k) {
+        return _rootCounts[k];
+    }
+
+    /** Return the time taken by the last count, in milliseconds. */
+    long time() {
+        return _time;
+    }
+
+    /** Return the number of leaves counted per second by the last
+     *  count. */
+    long nodesPerSecond() {
+        return _total * 1000 / Math.max(1, _time);
+    }
+
+    /** Print the results of the last count, to depth DEPTH, on OUT: the
+     *  count for each root move, then the total. */
+    void print(PrintStream out, int depth) {
+        for (int k = 0; k < rootMoves(); k += 1) {
+            out.printf("%s: %d%n", Move.mv(_rootMoves[k]), _rootCounts[k]);
+        }
+        out.printf("Perft %d: %d nodes, %d ms, %d nodes/s%n", depth, _total,
+                   _time, nodesPerSecond());
+    }
+
+    /** Return the number of leaves of the tree of legal moves from BOARD
+     *  to DEPTH plies, using BUFFERS[k] for the moves k plies from the
+     *  leaves.  BOARD is restored before returning. */
+    private long count(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        } else if (board.winner() != null) {
+            return 0;
+        }
+        int[] moves = buffers[depth - 1];
+        int n = board.legalMoves(board.turn(), moves);
+        if (depth == 1 || n == 0) {
+            return n;
+        }
+        boolean cached = _keys != null && board.captured();
+        long key = cached ? board.hash() : 0;
+        if (cached) {
+            int i = (int) (key >>> 32 ^ key) & (_keys.length - 1);
+            long data = _data[i];
+            if (data != 0 && (_keys[i] ^ data) == key
+                && (data & DEPTH_MASK) == depth) {
+                return data >>> COUNT_SHIFT;
+            }
+        }
+        long result = 0;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            result += count(board, depth - 1, buffers);
+            board.undo();
+        }
+        if (cached && result < 1L << (Long.SIZE - COUNT_SHIFT)) {
+            int i = (int) (key >>> 32 ^ key) & (_keys.length - 1);
+            long data = result << COUNT_SHIFT | depth;
+            _keys[i] = key ^ data;
+            _data[i] = data;
+        }
+        return result;
+    }
+
+    /** A count, on a worker thread, of the leaves below one root move. */
+    private class RootTask extends RecursiveAction {
+
+        /** A task to count the leaves below root move #K of ROOT, to DEPTH
+         *  plies from ROOT. */
+        RootTask(Board root, int k, int depth) {
+            _root = root;
+            _k = k;
+            _depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            Board board = new Board(_root);
+            board.makeMove(_rootMoves[_k]);
+            _rootCounts[_k] =
+                count(board, _depth - 1,
+                      new int[Math.max(1, _depth)][Board.MAX_MOVES]);
+        }
+
+        /** The root position, which is not changed while tasks run. */
+        private final Board _root;
+        /** The number of my root move, and the depth from the root. */
+        private final int _k, _depth;
+    }
+
+    /** Layout of a cache entry: the depth in the low bits and the count
+     *  above it. */
+    private static final int COUNT_SHIFT = 8;
+    /** See COUNT_SHIFT. */
+    private static final long DEPTH_MASK = (1 << COUNT_SHIFT) - 1;
+
+    /** Bytes per cache entry. */
+    private static final int ENTRY_BYTES = 16;
+    /** Maximum number of cache entries. */
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    /** Number of threads. */
+    private final int _threads;
+    /** The cache, or null if there is none: _keys[i] is the key of the
+     *  position in entry i XORed with _data[i], and _data[i] holds its
+     *  depth and count (0 for an empty entry). */
+    private final long[] _keys, _data;
+
+    /** The root moves of the last count. */
+    private int[] _rootMoves = new int[0];
+    /** The leaves below each root move in the last count. */
+    private long[] _rootCounts = new long[0];
+    /** The total of the last count. */
+    private long _total;
+    /** The time taken by the last count, in milliseconds. */
+    private long _time;
+}
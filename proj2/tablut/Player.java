@@ -36,9 +36,20 @@ abstract class Player {
     /** Return either a String denoting either a legal move for me
      *  or another command (which may be invalid).  Always returns the
      *  latter if board().turn() is not myPiece() or if board.winner()
-     *  is not null. */
+     *  is not null.  An automated player with no legal move returns
+     *  null. */
     abstract String myMove();
 
+    /** Start thinking about the game, if I can, while my opponent chooses
+     *  a move, until stopPondering.  Does nothing by default. */
+    void startPondering() {
+    }
+
+    /** Stop any thinking begun by startPondering, waiting for it to
+     *  finish.  Does nothing by default. */
+    void stopPondering() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
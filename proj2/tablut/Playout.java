@@ -0,0 +1,433 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** A kernel for playing games from a position to the end with random
+ *  moves (playouts), much faster than playing them on a Board.  The
+ *  position is copied once into a scratch board of primitive arrays,
+ *  and each playout restarts from that copy, so playouts allocate
+ *  nothing and need no undo.  The rules, including captures, the throne,
+ *  and repetition (counting the positions of the game before the copy),
+ *  are those of Board, except that the move limit is not enforced: a
+ *  playout instead stops unfinished after a fixed number of moves.
+ *
+ *  Moves are random but lightly biased.  WHITE always moves the king to
+ *  the edge when it can.  Otherwise a move is found by choosing a piece,
+ *  a direction, and a distance at random, so that a piece with few moves
+ *  is as likely to move as one with many; the legal moves are listed
+ *  only when several such tries find no move.  Random numbers come from
+ *  a xorshift generator of my own.
+ *
+ *  A Playout is used by one thread at a time; threads each use their
+ *  own, sharing only immutable tables.
+ *  @author Michael Chien
+ */
+final class Playout {
+
+    /** A kernel whose playouts stop after at most LIMIT moves, choosing
+     *  moves with random numbers generated from SEED. */
+    Playout(int limit, long seed) {
+        if (limit <= 0) {
+            throw Utils.error("playout limit must be positive");
+        }
+        _limit = limit;
+        _path = new int[limit];
+        _random = seed * 0x9e3779b97f4a7c15L ^ 0x5deece66dL;
+        if (_random == 0) {
+            _random = 1;
+        }
+        _keys = new long[0];
+        _startKeys = new long[0];
+    }
+
+    /** Start future playouts from the position on BOARD, which has no
+     *  winner, treating the positions recorded on BOARD as having
+     *  occurred. */
+    void setPosition(Board board) {
+        _startCounts[0] = _startCounts[1] = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = board.get(i);
+            _startCells[i] = (byte) p.ordinal();
+            if (p != EMPTY) {
+                int side = p == BLACK ? 1 : 0;
+                _startPositions[i] = _startCounts[side];
+                _startPieces[side][_startCounts[side]] = i;
+                _startCounts[side] += 1;
+            }
+        }
+        _startKing = board.kingPosition() == null ? -1
+            : board.kingPosition().index();
+        _startTurn = board.turn();
+        _startKey = board.hash();
+        int capacity = Integer.highestOneBit(
+            2 * (board.positionCount() + _limit) + 1) * 2;
+        if (_startKeys.length < capacity) {
+            _startKeys = new long[capacity];
+            _keys = new long[capacity];
+        } else {
+            Arrays.fill(_startKeys, 0);
+        }
+        for (int k = 0; k < board.positionCount(); k += 1) {
+            addKey(_startKeys, board.positionKey(k));
+        }
+    }
+
+    /** Play one game from the position given to setPosition until it is
+     *  won or my limit on moves is reached, and return the number of
+     *  moves made.  A side with no legal moves loses. */
+    int play() {
+        System.arraycopy(_startCells, 0, _cells, 0, NUM_SQUARES);
+        System.arraycopy(_startPositions, 0, _positions, 0, NUM_SQUARES);
+        for (int side = 0; side < 2; side += 1) {
+            _counts[side] = _startCounts[side];
+            System.arraycopy(_startPieces[side], 0, _pieces[side], 0,
+                             _counts[side]);
+        }
+        System.arraycopy(_startKeys, 0, _keys, 0, _keys.length);
+        _king = _startKing;
+        _turn = _startTurn;
+        _key = _startKey;
+        _winner = null;
+        _length = 0;
+        while (_winner == null && _length < _limit) {
+            int move = _turn == WHITE ? kingEscape() : 0;
+            if (move == 0) {
+                move = randomMove();
+            }
+            if (move == 0) {
+                _winner = _turn.opponent();
+                break;
+            }
+            _path[_length] = move;
+            _length += 1;
+            makeMove(Move.fromIndex(move), Move.toIndex(move));
+        }
+        return _length;
+    }
+
+    /** Return the winner of the last playout, or null if it reached my
+     *  limit on moves without one. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return the number of moves in the last playout. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the code (see Move.code()) of move #K of the last playout,
+     *  where 0 <= K < length(). */
+    int move(int k) {
+        return _path[k];
+    }
+
+    /** Return the code of a move of the king straight to the edge, or 0
+     *  if there is none. */
+    private int kingEscape() {
+        if (_king < 0) {
+            return 0;
+        }
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_RAYS[_king][d];
+            int k = 0;
+            while (k < ray.length && _cells[ray[k]] == EMPTY_CELL) {
+                k += 1;
+            }
+            if (k > 0 && k == ray.length) {
+                return _king * NUM_SQUARES + ray[k - 1];
+            }
+        }
+        return 0;
+    }
+
+    /** Return the code of a random legal move for _turn, or 0 if there is
+     *  none. */
+    private int randomMove() {
+        int side = _turn == BLACK ? 1 : 0, count = _counts[side];
+        if (count == 0) {
+            return 0;
+        }
+        for (int t = 0; t < TRIES; t += 1) {
+            int r = nextInt(4 * count);
+            int from = _pieces[side][r >> 2];
+            int[] ray = ROOK_RAYS[from][r & 3];
+            int run = 0;
+            while (run < ray.length && _cells[ray[run]] == EMPTY_CELL) {
+                run += 1;
+            }
+            if (run > 0) {
+                int to = ray[nextInt(run)];
+                if (to != THRONE_INDEX || from == _king) {
+                    return from * NUM_SQUARES + to;
+                }
+            }
+        }
+        int n = 0;
+        for (int k = 0; k < count; k += 1) {
+            int from = _pieces[side][k];
+            for (int d = 0; d < 4; d += 1) {
+                for (int to : ROOK_RAYS[from][d]) {
+                    if (_cells[to] != EMPTY_CELL) {
+                        break;
+                    }
+                    if (to != THRONE_INDEX || from == _king) {
+                        _moves[n] = from * NUM_SQUARES + to;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n == 0 ? 0 : _moves[nextInt(n)];
+    }
+
+    /** Move the piece on the square with index FROM to the square with
+     *  index TO, as Board.makeMove does, assuming it is a legal move. */
+    private void makeMove(int from, int to) {
+        int piece = _cells[from];
+        movePiece(from, to);
+        if (piece == KING_CELL) {
+            _king = to;
+            if (EDGE[to]) {
+                _winner = WHITE;
+                return;
+            }
+            captureAround(to, WHITE);
+        } else {
+            captureAround(to, _turn);
+            if (_turn == BLACK && SPECIAL[to] >= 0) {
+                specialCapture(SPECIAL[to]);
+            }
+        }
+        _turn = _turn.opponent();
+        _key ^= Board.WHITE_TO_MOVE;
+        if (!addKey(_keys, _key)) {
+            _winner = _turn;
+        }
+    }
+
+    /** Make the captures of a piece of MOVER's side (the king counting
+     *  as WHITE) that has just moved to the square with index TO. */
+    private void captureAround(int to, Piece mover) {
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_RAYS[to][d];
+            if (ray.length < 2) {
+                continue;
+            }
+            int partner = _cells[ray[1]];
+            boolean ally = mover == BLACK ? partner == BLACK_CELL
+                : partner == WHITE_CELL || partner == KING_CELL;
+            if (ally || ray[1] == THRONE_INDEX && partner == EMPTY_CELL) {
+                capture(ray[0], mover);
+            }
+        }
+    }
+
+    /** Capture the piece, if any, that MOVER's side may capture on the
+     *  square with index I, given a partner on its far side. */
+    private void capture(int i, Piece mover) {
+        int victim = _cells[i];
+        if (mover != BLACK) {
+            if (victim == BLACK_CELL) {
+                remove(i);
+            }
+        } else if (victim == WHITE_CELL) {
+            remove(i);
+        } else if (victim == KING_CELL) {
+            boolean captured;
+            if (i == THRONE_INDEX) {
+                captured = blackNeighbors(i) == 4;
+            } else if (THRONE_NEIGHBOR[i]) {
+                captured = _cells[THRONE_INDEX] == EMPTY_CELL
+                    && blackNeighbors(i) >= 3;
+            } else {
+                captured = true;
+            }
+            if (captured) {
+                remove(i);
+                _king = -1;
+                _winner = BLACK;
+            }
+        }
+    }
+
+    /** Capture the WHITE piece, if any, on the square with index I next
+     *  to the throne when the throne is surrounded by three BLACK pieces
+     *  and one WHITE piece, as Board does after a BLACK move nearby. */
+    private void specialCapture(int i) {
+        int blacks = 0, whites = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int cell = _cells[ROOK_RAYS[THRONE_INDEX][d][0]];
+            if (cell == BLACK_CELL) {
+                blacks += 1;
+            } else if (cell == WHITE_CELL) {
+                whites += 1;
+            }
+        }
+        if (blacks == 3 && whites == 1 && _cells[i] == WHITE_CELL) {
+            remove(i);
+        }
+    }
+
+    /** Return the number of BLACK pieces next to the square with index
+     *  I. */
+    private int blackNeighbors(int i) {
+        int n = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int[] ray = ROOK_RAYS[i][d];
+            if (ray.length > 0 && _cells[ray[0]] == BLACK_CELL) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Move the piece on the square with index FROM to the empty square
+     *  with index TO. */
+    private void movePiece(int from, int to) {
+        int piece = _cells[from];
+        int side = piece == BLACK_CELL ? 1 : 0;
+        _cells[to] = (byte) piece;
+        _cells[from] = EMPTY_CELL;
+        _pieces[side][_positions[from]] = to;
+        _positions[to] = _positions[from];
+        _key ^= Board.ZOBRIST[piece][from] ^ Board.ZOBRIST[piece][to];
+    }
+
+    /** Remove the piece on the square with index I. */
+    private void remove(int i) {
+        int piece = _cells[i];
+        int side = piece == BLACK_CELL ? 1 : 0;
+        _counts[side] -= 1;
+        int last = _pieces[side][_counts[side]];
+        _pieces[side][_positions[i]] = last;
+        _positions[last] = _positions[i];
+        _cells[i] = EMPTY_CELL;
+        _key ^= Board.ZOBRIST[piece][i];
+    }
+
+    /** Add KEY to the open-addressed set KEYS, which has a power-of-two
+     *  length and is never more than half full, returning false if it was
+     *  already there.  Empty slots hold 0, which no position key is
+     *  assumed to equal. */
+    private static boolean addKey(long[] keys, long key) {
+        int mask = keys.length - 1;
+        for (int i = (int) (key ^ key >>> 32) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return false;
+            } else if (keys[i] == 0) {
+                keys[i] = key;
+                return true;
+            }
+        }
+    }
+
+    /** Return a random integer in 0 .. N-1, where N > 0. */
+    private int nextInt(int n) {
+        _random ^= _random << 13;
+        _random ^= _random >>> 7;
+        _random ^= _random << 17;
+        return (int) (((_random >>> 32) * n) >>> 32);
+    }
+
+    /** Ordinals of the Pieces, as stored in _cells. */
+    private static final byte EMPTY_CELL = (byte) EMPTY.ordinal(),
+        WHITE_CELL = (byte) WHITE.ordinal(),
+        BLACK_CELL = (byte) BLACK.ordinal(),
+        KING_CELL = (byte) KING.ordinal();
+
+    /** Index of the throne. */
+    private static final int THRONE_INDEX = Board.THRONE.index();
+
+    /** Number of random piece, direction, and distance choices tried
+     *  before the legal moves are listed. */
+    private static final int TRIES = 8;
+
+    /** EDGE[i] is true iff the square with index i is on the edge. */
+    private static final boolean[] EDGE = new boolean[NUM_SQUARES];
+
+    /** THRONE_NEIGHBOR[i] is true iff the square with index i is next to
+     *  the throne. */
+    private static final boolean[] THRONE_NEIGHBOR =
+        new boolean[NUM_SQUARES];
+
+    /** SPECIAL[i] is the index of the square checked by Board's special
+     *  capture after a BLACK move to the square with index i, or -1 if
+     *  there is no such check. */
+    private static final int[] SPECIAL = new int[NUM_SQUARES];
+
+    static {
+        Square[] neighbors = {
+            Board.NTHRONE, Board.STHRONE, Board.WTHRONE, Board.ETHRONE
+        };
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Square s = sq(i);
+            EDGE[i] = s.isEdge();
+            SPECIAL[i] = -1;
+            for (Square n : neighbors) {
+                if (s == n) {
+                    THRONE_NEIGHBOR[i] = true;
+                }
+                if (s.adjacent(n)) {
+                    SPECIAL[i] = s.between(Board.THRONE).index();
+                }
+            }
+        }
+    }
+
+    /** Most moves in a playout. */
+    private final int _limit;
+    /** The moves of the last playout, in _path[0 .. _length-1]. */
+    private final int[] _path;
+    /** Number of moves in the last playout. */
+    private int _length;
+    /** Winner of the last playout, or null. */
+    private Piece _winner;
+    /** State of my random number generator. */
+    private long _random;
+
+    /** The position playouts start from, laid out as the scratch board
+     *  below. */
+    private final byte[] _startCells = new byte[NUM_SQUARES];
+    /** See _startCells. */
+    private final int[] _startPositions = new int[NUM_SQUARES],
+        _startCounts = new int[2];
+    /** See _startCells. */
+    private final int[][] _startPieces = new int[2][NUM_SQUARES];
+    /** See _startCells. */
+    private int _startKing;
+    /** See _startCells. */
+    private Piece _startTurn;
+    /** See _startCells. */
+    private long _startKey;
+    /** Keys of the positions that occurred up to the start, as a set for
+     *  addKey. */
+    private long[] _startKeys;
+
+    /** The scratch board: _cells[i] is the ordinal of the Piece on the
+     *  square with index i. */
+    private final byte[] _cells = new byte[NUM_SQUARES];
+    /** Piece lists, as in Board: _pieces[0][0 .. _counts[0]-1] hold the
+     *  squares of the WHITE pieces and the king, and _pieces[1] those of
+     *  the BLACK pieces. */
+    private final int[][] _pieces = new int[2][NUM_SQUARES];
+    /** Number of pieces in each row of _pieces. */
+    private final int[] _counts = new int[2];
+    /** _positions[i] is the position in its piece list of the piece on
+     *  the square with index i. */
+    private final int[] _positions = new int[NUM_SQUARES];
+    /** Square index of the king, or -1 if it has been captured. */
+    private int _king;
+    /** Side to move. */
+    private Piece _turn;
+    /** Key (see Board.hash()) of the current position. */
+    private long _key;
+    /** Keys of the positions that have occurred, including those since
+     *  the start of the playout. */
+    private long[] _keys;
+    /** Scratch space for listing legal moves. */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+}
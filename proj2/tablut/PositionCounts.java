@@ -0,0 +1,119 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A multiset of 64-bit position keys, used by Board to detect repeated
+ *  positions.  The keys live in an open-addressed table with linear
+ *  probing, so adding and removing a key allocates nothing unless the
+ *  table has to grow.
+ *  @author Michael Chien
+ */
+final class PositionCounts {
+
+    /** An empty multiset. */
+    PositionCounts() {
+        _keys = new long[INITIAL_CAPACITY];
+        _counts = new int[INITIAL_CAPACITY];
+    }
+
+    /** A copy of MODEL. */
+    PositionCounts(PositionCounts model) {
+        _keys = model._keys.clone();
+        _counts = model._counts.clone();
+        _size = model._size;
+    }
+
+    /** Add one occurrence of KEY, returning its new number of
+     *  occurrences. */
+    int add(long key) {
+        if (2 * (_size + 1) > _keys.length) {
+            resize(2 * _keys.length);
+        }
+        int i = slot(key);
+        if (_counts[i] == 0) {
+            _keys[i] = key;
+            _size += 1;
+        }
+        _counts[i] += 1;
+        return _counts[i];
+    }
+
+    /** Remove one occurrence of KEY, if present, returning the number of
+     *  occurrences that remain. */
+    int remove(long key) {
+        int i = slot(key);
+        if (_counts[i] == 0) {
+            return 0;
+        }
+        _counts[i] -= 1;
+        if (_counts[i] > 0) {
+            return _counts[i];
+        }
+        _size -= 1;
+        int mask = _keys.length - 1;
+        for (int j = (i + 1) & mask; _counts[j] != 0; j = (j + 1) & mask) {
+            int home = home(_keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                _keys[i] = _keys[j];
+                _counts[i] = _counts[j];
+                _counts[j] = 0;
+                i = j;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the number of occurrences of KEY. */
+    int count(long key) {
+        return _counts[slot(key)];
+    }
+
+    /** Remove all keys. */
+    void clear() {
+        Arrays.fill(_counts, 0);
+        _size = 0;
+    }
+
+    /** Return the slot holding KEY, or the empty slot where it would
+     *  go. */
+    private int slot(long key) {
+        int mask = _keys.length - 1;
+        int i = home(key);
+        while (_counts[i] != 0 && _keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Return the preferred slot for KEY. */
+    private int home(long key) {
+        return (int) (key ^ (key >>> 32)) & (_keys.length - 1);
+    }
+
+    /** Rehash my contents into tables with CAPACITY slots (a power of
+     *  two). */
+    private void resize(int capacity) {
+        long[] keys = _keys;
+        int[] counts = _counts;
+        _keys = new long[capacity];
+        _counts = new int[capacity];
+        for (int i = 0; i < keys.length; i += 1) {
+            if (counts[i] != 0) {
+                int j = slot(keys[i]);
+                _keys[j] = keys[i];
+                _counts[j] = counts[i];
+            }
+        }
+    }
+
+    /** Initial number of slots (a power of two). */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** The keys present, indexed by slot. */
+    private long[] _keys;
+    /** _counts[i] is the number of occurrences of _keys[i], or 0 if slot
+     *  i is empty. */
+    private int[] _counts;
+    /** Number of distinct keys present. */
+    private int _size;
+}
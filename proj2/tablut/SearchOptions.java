@@ -0,0 +1,320 @@
+package tablut;
+
+/** Settings for the AI players created from one AI template.  Main fills
+ *  these in from the command line; every AI created from the template
+ *  shares them.
+ *  @author Michael Chien
+ */
+class SearchOptions {
+
+    /** Default settings. */
+    SearchOptions() {
+    }
+
+    /** A copy of MODEL. */
+    SearchOptions(SearchOptions model) {
+        _moveTime = model._moveTime;
+        _gameTime = model._gameTime;
+        _hashSize = model._hashSize;
+        _threads = model._threads;
+        _depth = model._depth;
+        _splitRoot = model._splitRoot;
+        _nullMove = model._nullMove;
+        _nullMoveReduction = model._nullMoveReduction;
+        _nullMoveMinPieces = model._nullMoveMinPieces;
+        _lateMoveReduction = model._lateMoveReduction;
+        _lateMoveDepth = model._lateMoveDepth;
+        _lateMoveIndex = model._lateMoveIndex;
+        _futility = model._futility;
+        _futilityMargin = model._futilityMargin;
+        _book = model._book;
+        _tablebase = model._tablebase;
+        _ponder = model._ponder;
+        _playouts = model._playouts;
+        _stats = model._stats;
+    }
+
+    /** Return the most time, in milliseconds, to spend on one move. */
+    long moveTime() {
+        return _moveTime;
+    }
+
+    /** Set moveTime() to MILLIS. */
+    void setMoveTime(long millis) {
+        if (millis <= 0) {
+            throw Utils.error("move time must be positive");
+        }
+        _moveTime = millis;
+    }
+
+    /** Return the total time, in milliseconds, that one AI may spend on
+     *  all its moves in a game, or 0 if there is no such limit. */
+    long gameTime() {
+        return _gameTime;
+    }
+
+    /** Set gameTime() to MILLIS (0 for none). */
+    void setGameTime(long millis) {
+        if (millis < 0) {
+            throw Utils.error("game time must not be negative");
+        }
+        _gameTime = millis;
+    }
+
+    /** Return the size of the transposition table, in megabytes. */
+    int hashSize() {
+        return _hashSize;
+    }
+
+    /** Set hashSize() to MEGABYTES. */
+    void setHashSize(int megabytes) {
+        if (megabytes <= 0) {
+            throw Utils.error("hash size must be positive");
+        }
+        _hashSize = megabytes;
+    }
+
+    /** Return the number of threads that search each move. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Set threads() to COUNT. */
+    void setThreads(int count) {
+        if (count <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _threads = count;
+    }
+
+    /** Return the greatest depth to search, or 0 if the depth is limited
+     *  only by time. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Set depth() to PLIES (0 for no limit). */
+    void setDepth(int plies) {
+        if (plies < 0) {
+            throw Utils.error("depth must not be negative");
+        }
+        _depth = plies;
+    }
+
+    /** Return true iff several threads() should search by dividing the
+     *  root moves among themselves, rather than each searching the whole
+     *  tree and sharing results through the transposition table. */
+    boolean splitRoot() {
+        return _splitRoot;
+    }
+
+    /** Set splitRoot() to SPLIT. */
+    void setSplitRoot(boolean split) {
+        _splitRoot = split;
+    }
+
+    /** Return true iff the search may use null-move pruning. */
+    boolean nullMove() {
+        return _nullMove;
+    }
+
+    /** Set nullMove() to ON. */
+    void setNullMove(boolean on) {
+        _nullMove = on;
+    }
+
+    /** Return the number of plies by which the search after a null move
+     *  is reduced. */
+    int nullMoveReduction() {
+        return _nullMoveReduction;
+    }
+
+    /** Set nullMoveReduction() to PLIES. */
+    void setNullMoveReduction(int plies) {
+        if (plies <= 0) {
+            throw Utils.error("null-move reduction must be positive");
+        }
+        _nullMoveReduction = plies;
+    }
+
+    /** Return the fewest pieces (counting the king) the side to move must
+     *  have for a null move to be tried. */
+    int nullMoveMinPieces() {
+        return _nullMoveMinPieces;
+    }
+
+    /** Set nullMoveMinPieces() to COUNT. */
+    void setNullMoveMinPieces(int count) {
+        if (count < 0) {
+            throw Utils.error("piece count must not be negative");
+        }
+        _nullMoveMinPieces = count;
+    }
+
+    /** Return true iff the search may reduce the depth of quiet moves late
+     *  in the move order. */
+    boolean lateMoveReduction() {
+        return _lateMoveReduction;
+    }
+
+    /** Set lateMoveReduction() to ON. */
+    void setLateMoveReduction(boolean on) {
+        _lateMoveReduction = on;
+    }
+
+    /** Return the least depth at which late moves are reduced. */
+    int lateMoveDepth() {
+        return _lateMoveDepth;
+    }
+
+    /** Set lateMoveDepth() to PLIES. */
+    void setLateMoveDepth(int plies) {
+        if (plies < 2) {
+            throw Utils.error("late-move depth must be at least 2");
+        }
+        _lateMoveDepth = plies;
+    }
+
+    /** Return the position in the move order (from 0) of the first move
+     *  that may be reduced.  Moves at twice this position or later are
+     *  reduced by two plies rather than one. */
+    int lateMoveIndex() {
+        return _lateMoveIndex;
+    }
+
+    /** Set lateMoveIndex() to INDEX. */
+    void setLateMoveIndex(int index) {
+        if (index <= 0) {
+            throw Utils.error("late-move index must be positive");
+        }
+        _lateMoveIndex = index;
+    }
+
+    /** Return true iff the search may skip quiet moves near the leaves
+     *  that cannot raise the value enough to matter. */
+    boolean futility() {
+        return _futility;
+    }
+
+    /** Set futility() to ON. */
+    void setFutility(boolean on) {
+        _futility = on;
+    }
+
+    /** Return the most, per ply of remaining depth, that a quiet move is
+     *  assumed to be able to raise the static value. */
+    int futilityMargin() {
+        return _futilityMargin;
+    }
+
+    /** Set futilityMargin() to MARGIN. */
+    void setFutilityMargin(int margin) {
+        if (margin < 0) {
+            throw Utils.error("futility margin must not be negative");
+        }
+        _futilityMargin = margin;
+    }
+
+    /** Return the opening book to consult before searching, or null if
+     *  there is none. */
+    OpeningBook book() {
+        return _book;
+    }
+
+    /** Set book() to BOOK (null for none). */
+    void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /** Return the endgame tablebases to consult during the search, or
+     *  null if there are none. */
+    Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /** Set tablebase() to TABLEBASE (null for none). */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+    }
+
+    /** Return true iff the AI should keep searching on a background thread
+     *  while a manual opponent chooses a move. */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Set ponder() to ON. */
+    void setPonder(boolean on) {
+        _ponder = on;
+    }
+
+    /** Return the number of playouts a Monte Carlo player makes for each
+     *  move, or 0 if it plays as many as moveTime() allows. */
+    long playouts() {
+        return _playouts;
+    }
+
+    /** Set playouts() to COUNT (0 for no limit). */
+    void setPlayouts(long count) {
+        if (count < 0) {
+            throw Utils.error("playout count must not be negative");
+        }
+        _playouts = count;
+    }
+
+    /** Return true iff the AI should report statistics on each search
+     *  (see SearchStats) as a note and in the log. */
+    boolean stats() {
+        return _stats;
+    }
+
+    /** Set stats() to ON. */
+    void setStats(boolean on) {
+        _stats = on;
+    }
+
+    /** Default for moveTime(). */
+    static final long DEFAULT_MOVE_TIME = 1000;
+
+    /** Default for hashSize(). */
+    static final int DEFAULT_HASH_SIZE = 16;
+
+    /** See moveTime(). */
+    private long _moveTime = DEFAULT_MOVE_TIME;
+    /** See gameTime(). */
+    private long _gameTime;
+    /** See hashSize(). */
+    private int _hashSize = DEFAULT_HASH_SIZE;
+    /** See threads(). */
+    private int _threads = 1;
+    /** See depth(). */
+    private int _depth;
+    /** See splitRoot(). */
+    private boolean _splitRoot;
+    /** See nullMove(). */
+    private boolean _nullMove = true;
+    /** See nullMoveReduction(). */
+    private int _nullMoveReduction = 2;
+    /** See nullMoveMinPieces(). */
+    private int _nullMoveMinPieces = 4;
+    /** See lateMoveReduction(). */
+    private boolean _lateMoveReduction = true;
+    /** See lateMoveDepth(). */
+    private int _lateMoveDepth = 3;
+    /** See lateMoveIndex(). */
+    private int _lateMoveIndex = 3;
+    /** See futility(). */
+    private boolean _futility = true;
+    /** See futilityMargin(). */
+    private int _futilityMargin = 100;
+    /** See book(). */
+    private OpeningBook _book;
+    /** See tablebase(). */
+    private Tablebase _tablebase;
+    /** See ponder(). */
+    private boolean _ponder;
+    /** See playouts(). */
+    private long _playouts;
+    /** See stats(). */
+    private boolean _stats;
+}
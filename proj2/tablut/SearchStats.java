@@ -0,0 +1,157 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** Statistics on one search by an AI: how many positions it visited,
+ *  how well its moves were ordered, how useful its transposition table
+ *  was, and how long each iteration of its iterative deepening took.
+ *  The AI keeps its counts in plain fields on each thread and adds
+ *  them here when the search is done, so that counting costs next to
+ *  nothing.
+ *  @author Michael Chien
+ */
+final class SearchStats {
+
+    /** Empty statistics. */
+    SearchStats() {
+        clear();
+    }
+
+    /** Reset me to empty statistics. */
+    void clear() {
+        _nodes = _quiescenceNodes = _cutoffs = _firstMoveCutoffs = 0;
+        _probes = _hits = 0;
+        _time = 0;
+        _iterations = 0;
+    }
+
+    /** Add the counts of one thread: NODES positions visited, QNODES of
+     *  them in quiescence search, CUTOFFS beta cutoffs, FIRSTMOVECUTOFFS
+     *  of them by the first move searched, and PROBES transposition-table
+     *  probes, HITS of which found an entry. */
+    void add(long nodes, long qnodes, long cutoffs, long firstMoveCutoffs,
+             long probes, long hits) {
+        _nodes += nodes;
+        _quiescenceNodes += qnodes;
+        _cutoffs += cutoffs;
+        _firstMoveCutoffs += firstMoveCutoffs;
+        _probes += probes;
+        _hits += hits;
+    }
+
+    /** Record that the iteration to DEPTH finished after MILLIS
+     *  milliseconds, when the search had visited NODES positions. */
+    void addIteration(int depth, long nodes, long millis) {
+        if (_iterations == _depths.length) {
+            _depths = Arrays.copyOf(_depths, 2 * _iterations);
+            _iterationNodes = Arrays.copyOf(_iterationNodes, 2 * _iterations);
+            _iterationTimes = Arrays.copyOf(_iterationTimes, 2 * _iterations);
+        }
+        _depths[_iterations] = depth;
+        _iterationNodes[_iterations] = nodes;
+        _iterationTimes[_iterations] = millis;
+        _iterations += 1;
+    }
+
+    /** Set time() to MILLIS. */
+    void setTime(long millis) {
+        _time = millis;
+    }
+
+    /** Return the number of positions visited, on all threads. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of positions visited in quiescence search. */
+    long quiescenceNodes() {
+        return _quiescenceNodes;
+    }
+
+    /** Return the time the search took, in milliseconds. */
+    long time() {
+        return _time;
+    }
+
+    /** Return the number of positions visited per second. */
+    long nodesPerSecond() {
+        return _nodes * 1000 / Math.max(1, _time);
+    }
+
+    /** Return the fraction of beta cutoffs made by the first move
+     *  searched, or 0 if there were none. */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0 : (double) _firstMoveCutoffs / _cutoffs;
+    }
+
+    /** Return the number of transposition-table probes. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the fraction of transposition-table probes that found an
+     *  entry, or 0 if there were none. */
+    double hitRate() {
+        return _probes == 0 ? 0 : (double) _hits / _probes;
+    }
+
+    /** Return the number of iterations that finished. */
+    int iterations() {
+        return _iterations;
+    }
+
+    /** Return the effective branching factor: the ratio of the positions
+     *  visited by the last iteration that finished to those visited by
+     *  the one before it, or 0 if fewer than two finished. */
+    double branchingFactor() {
+        int n = _iterations;
+        if (n < 2) {
+            return 0;
+        }
+        long last = _iterationNodes[n - 1] - _iterationNodes[n - 2],
+            previous = _iterationNodes[n - 2]
+                - (n > 2 ? _iterationNodes[n - 3] : 0);
+        return previous == 0 ? 0 : (double) last / previous;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d nodes (%d quiescence), %d nodes/s,"
+                                    + " first-move cutoffs %.1f%%,"
+                                    + " EBF %.2f, TT %d probes %.1f%% hits;"
+                                    + " ms per depth:",
+                                    _nodes, _quiescenceNodes,
+                                    nodesPerSecond(),
+                                    100 * firstMoveCutoffRate(),
+                                    branchingFactor(), _probes,
+                                    100 * hitRate()));
+        for (int k = 0; k < _iterations; k += 1) {
+            long previous = k == 0 ? 0 : _iterationTimes[k - 1];
+            result.append(String.format(" %d:%d", _depths[k],
+                                        _iterationTimes[k] - previous));
+        }
+        return result.toString();
+    }
+
+    /** Initial capacity for iterations. */
+    private static final int INITIAL_ITERATIONS = 16;
+
+    /** Positions visited in all and in quiescence search. */
+    private long _nodes, _quiescenceNodes;
+    /** Beta cutoffs in all and by the first move searched. */
+    private long _cutoffs, _firstMoveCutoffs;
+    /** Transposition-table probes and the probes that found an entry. */
+    private long _probes, _hits;
+    /** See time(). */
+    private long _time;
+    /** Number of iterations recorded. */
+    private int _iterations;
+    /** For iteration k, _depths[k] is its depth, and _iterationNodes[k]
+     *  and _iterationTimes[k] are the positions visited and milliseconds
+     *  taken by the search up to its end. */
+    private int[] _depths = new int[INITIAL_ITERATIONS];
+    /** See _depths. */
+    private long[] _iterationNodes = new long[INITIAL_ITERATIONS],
+        _iterationTimes = new long[INITIAL_ITERATIONS];
+}
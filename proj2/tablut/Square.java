@@ -232,6 +232,74 @@ final class Square {
         }
     }
 
+    /** ROOK_RAYS[i][d] holds the indices of the squares in
+     *  ROOK_SQUARES[i][d], for loops that must not allocate. */
+    static final int[][][] ROOK_RAYS = new int[NUM_SQUARES][4][];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                SqList L = ROOK_SQUARES[i][d];
+                ROOK_RAYS[i][d] = new int[L.size()];
+                for (int k = 0; k < L.size(); k += 1) {
+                    ROOK_RAYS[i][d][k] = L.get(k).index();
+                }
+            }
+        }
+    }
+
+    /** Sets of squares are represented as bitboards: pairs of longs LO, HI
+     *  in which bit k of LO stands for the square with index k (0 <= k < 64)
+     *  and bit k of HI for the square with index 64 + k. */
+
+    /** Return the LO word of the bitboard containing only square INDEX. */
+    static long loBit(int index) {
+        return index < 64 ? 1L << index : 0L;
+    }
+
+    /** Return the HI word of the bitboard containing only square INDEX. */
+    static long hiBit(int index) {
+        return index >= 64 ? 1L << (index - 64) : 0L;
+    }
+
+    /** Return true iff square INDEX is in the bitboard LO, HI. */
+    static boolean hasBit(long lo, long hi, int index) {
+        return index < 64 ? (lo >>> index & 1L) != 0
+            : (hi >>> (index - 64) & 1L) != 0;
+    }
+
+    /** PATH_LO[i][j], PATH_HI[i][j] is the bitboard of squares traversed by
+     *  the rook move from square i to square j, including j but not i.  It
+     *  is empty if i-j is not a rook move. */
+    static final long[][] PATH_LO = new long[NUM_SQUARES][NUM_SQUARES],
+        PATH_HI = new long[NUM_SQUARES][NUM_SQUARES];
+
+    /** NEIGHBORS_LO[i], NEIGHBORS_HI[i] is the bitboard of the squares
+     *  orthogonally adjacent to square i. */
+    static final long[] NEIGHBORS_LO = new long[NUM_SQUARES],
+        NEIGHBORS_HI = new long[NUM_SQUARES];
+
+    static {
+        for (Square sq : SQUARES) {
+            int i0 = sq.index();
+            for (int d = 0; d < DIR.length; d += 1) {
+                long lo, hi;
+                lo = hi = 0;
+                for (Square sq1 : ROOK_SQUARES[i0][d]) {
+                    lo |= loBit(sq1.index());
+                    hi |= hiBit(sq1.index());
+                    PATH_LO[i0][sq1.index()] = lo;
+                    PATH_HI[i0][sq1.index()] = hi;
+                }
+                if (!ROOK_SQUARES[i0][d].isEmpty()) {
+                    int i1 = ROOK_SQUARES[i0][d].get(0).index();
+                    NEIGHBORS_LO[i0] |= loBit(i1);
+                    NEIGHBORS_HI[i0] |= hiBit(i1);
+                }
+            }
+        }
+    }
+
     /** My index position. */
     private final int _index;
 
@@ -0,0 +1,344 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** Endgame tablebases: exact results for positions with the king, a few
+ *  WHITE pieces, and a few BLACK pieces, as computed by
+ *  TablebaseGenerator.  There is one file for each material class (number
+ *  of WHITE pieces besides the king and number of BLACK pieces), named as
+ *  by fileName, holding the result of every position in the class with
+ *  each side to move.
+ *
+ *  A result is the number of plies to the end of the game with best play,
+ *  plus one: odd distances are wins for the side to move, and even ones
+ *  losses.  Zero means that neither side can force a win (ignoring the
+ *  rules on repeated positions and move limits), or that the position is
+ *  impossible.  Results are bit-packed into as few bits as the longest
+ *  distance in the file needs, rounded up to a power of two.
+ *
+ *  Positions are numbered by the square of the king, mapped by one of the
+ *  eight symmetries of the board into the triangle 1 <= col <= row <= 4
+ *  (the king is never on the edge during a game), then by the set of
+ *  squares holding WHITE pieces and the set holding BLACK pieces, each
+ *  ranked in the combinatorial number system over the squares not yet
+ *  occupied.  The files are mapped into memory, and any number of threads
+ *  may probe them at once.
+ *  @author Michael Chien
+ */
+final class Tablebase {
+
+    /** Most pieces, not counting the king, in any class that may be
+     *  generated. */
+    static final int MAX_PIECES = 4;
+
+    /** The tablebases in directory DIR, which may hold files for any set
+     *  of material classes (or none).  Throws IOException if a file
+     *  cannot be read, and IllegalArgumentException if one is not a
+     *  tablebase for its class. */
+    Tablebase(String dir) throws IOException {
+        for (int w = 0; w <= MAX_PIECES; w += 1) {
+            for (int b = 0; w + b <= MAX_PIECES; b += 1) {
+                File file = new File(dir, fileName(w, b));
+                if (file.exists()) {
+                    _tables[w][b] = map(file, w, b);
+                    _maxDistance = Math.max(_maxDistance, maxDistance(w, b));
+                }
+            }
+        }
+    }
+
+    /** Return the name of the file for the class with WHITES WHITE pieces
+     *  besides the king and BLACKS BLACK pieces. */
+    static String fileName(int whites, int blacks) {
+        return String.format("k%dw%db.tb", whites, blacks);
+    }
+
+    /** Return true iff I have the class with WHITES WHITE pieces besides
+     *  the king and BLACKS BLACK pieces. */
+    boolean has(int whites, int blacks) {
+        return whites <= MAX_PIECES && blacks <= MAX_PIECES - whites
+            && _tables[whites][blacks] != null;
+    }
+
+    /** Return the longest distance recorded in the class with WHITES
+     *  WHITE pieces and BLACKS BLACK pieces, which I must have. */
+    int maxDistance(int whites, int blacks) {
+        return _tables[whites][blacks].getInt(MAX_DISTANCE_OFFSET);
+    }
+
+    /** Return the longest distance recorded in any of my classes. */
+    int maxDistance() {
+        return _maxDistance;
+    }
+
+    /** Return the result (as described above) of the position on BOARD,
+     *  or 0 if BOARD has no king, the king is on the edge, or I do not
+     *  have its class. */
+    int probe(Board board) {
+        Square king = board.kingPosition();
+        int whites = board.pieceCount(WHITE) - 1,
+            blacks = board.pieceCount(BLACK);
+        if (king == null || king.isEdge() || !has(whites, blacks)) {
+            return 0;
+        }
+        MappedByteBuffer table = _tables[whites][blacks];
+        long i = index(board);
+        if (board.turn() == BLACK) {
+            i += size(whites, blacks);
+        }
+        int bits = table.getInt(BITS_OFFSET), perWord = Long.SIZE / bits;
+        long word = table.getLong(HEADER_BYTES
+                                  + (int) (i / perWord) * Long.BYTES);
+        return (int) (word >>> (i % perWord) * bits) & ((1 << bits) - 1);
+    }
+
+    /** Return true iff RESULT (nonzero) is a win for the side to move. */
+    static boolean isWin(int result) {
+        return result % 2 == 0;
+    }
+
+    /** Return the number of plies to the end of the game for RESULT
+     *  (nonzero). */
+    static int distance(int result) {
+        return result - 1;
+    }
+
+    /** Return the number of positions with each side to move in the class
+     *  with WHITES WHITE pieces besides the king and BLACKS BLACK
+     *  pieces. */
+    static long size(int whites, int blacks) {
+        return KING_SQUARES.length * CHOOSE[SLOTS][whites]
+            * CHOOSE[SLOTS - whites][blacks];
+    }
+
+    /** Return the number of the position on BOARD, which has a king off
+     *  the edge, within its class (not counting the side to move). */
+    static long index(Board board) {
+        int king = board.kingPosition().index();
+        int[] sym = SYMMETRIES[KING_SYMMETRY[king]];
+        king = sym[king];
+        long whiteLo = 0, whiteHi = 0, blackLo = 0, blackHi = 0;
+        for (int k = board.pieceCount(WHITE) - 1; k >= 0; k -= 1) {
+            int s = sym[board.pieceIndex(WHITE, k)];
+            if (s != king) {
+                whiteLo |= loBit(s);
+                whiteHi |= hiBit(s);
+            }
+        }
+        for (int k = board.pieceCount(BLACK) - 1; k >= 0; k -= 1) {
+            int s = sym[board.pieceIndex(BLACK, k)];
+            blackLo |= loBit(s);
+            blackHi |= hiBit(s);
+        }
+        int whites = Long.bitCount(whiteLo) + Long.bitCount(whiteHi),
+            blacks = Long.bitCount(blackLo) + Long.bitCount(blackHi);
+        long whiteRank = 0, blackRank = 0;
+        int n = 0;
+        for (int s = 0; s < NUM_SQUARES; s += 1) {
+            if (hasBit(whiteLo, whiteHi, s)) {
+                n += 1;
+                whiteRank += CHOOSE[s - (s > king ? 1 : 0)][n];
+            }
+        }
+        n = 0;
+        for (int s = 0; s < NUM_SQUARES; s += 1) {
+            if (hasBit(blackLo, blackHi, s)) {
+                n += 1;
+                int slot = s - (s > king ? 1 : 0)
+                    - Long.bitCount(whiteLo & (loBit(s) - 1))
+                    - (s < Long.SIZE ? 0
+                       : Long.bitCount(whiteHi & (hiBit(s) - 1)));
+                blackRank += CHOOSE[slot][n];
+            }
+        }
+        return (KING_RANK[king] * CHOOSE[SLOTS][whites] + whiteRank)
+            * CHOOSE[SLOTS - whites][blacks] + blackRank;
+    }
+
+    /** Set PIECES[0] to the index of the king's square in the position
+     *  numbered INDEX in the class with WHITES WHITE pieces besides the
+     *  king and BLACKS BLACK pieces, PIECES[1 .. WHITES] to those of the
+     *  WHITE pieces, and PIECES[WHITES + 1 .. WHITES + BLACKS] to those
+     *  of the BLACK pieces.  Return false if the position is impossible
+     *  because a piece other than the king is on the throne. */
+    static boolean position(int whites, int blacks, long index,
+                            int[] pieces) {
+        long blackCount = CHOOSE[SLOTS - whites][blacks];
+        long whiteCount = CHOOSE[SLOTS][whites];
+        int king = KING_SQUARES[(int) (index / blackCount / whiteCount)];
+        pieces[0] = king;
+        unrank(index / blackCount % whiteCount, whites, pieces, 1);
+        for (int k = 1; k <= whites; k += 1) {
+            pieces[k] += pieces[k] >= king ? 1 : 0;
+        }
+        unrank(index % blackCount, blacks, pieces, whites + 1);
+        for (int k = whites + 1; k <= whites + blacks; k += 1) {
+            int slot = pieces[k], s;
+            for (s = 0; ; s += 1) {
+                if (s != king && !contains(pieces, 1, whites, s)) {
+                    if (slot == 0) {
+                        break;
+                    }
+                    slot -= 1;
+                }
+            }
+            pieces[k] = s;
+        }
+        return !contains(pieces, 1, whites + blacks, THRONE_INDEX);
+    }
+
+    /** Set PIECES[START .. START + COUNT - 1] to the set of COUNT slots
+     *  whose rank in the combinatorial number system is RANK, in
+     *  increasing order. */
+    private static void unrank(long rank, int count, int[] pieces,
+                               int start) {
+        int slot = SLOTS;
+        for (int n = count; n > 0; n -= 1) {
+            slot -= 1;
+            while (CHOOSE[slot][n] > rank) {
+                slot -= 1;
+            }
+            pieces[start + n - 1] = slot;
+            rank -= CHOOSE[slot][n];
+        }
+    }
+
+    /** Return true iff PIECES[FROM .. TO] contains S. */
+    private static boolean contains(int[] pieces, int from, int to, int s) {
+        for (int k = from; k <= to; k += 1) {
+            if (pieces[k] == s) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the contents of FILE, checking that it is a tablebase for
+     *  the class with WHITES WHITE pieces and BLACKS BLACK pieces. */
+    private static MappedByteBuffer map(File file, int whites, int blacks)
+        throws IOException {
+        MappedByteBuffer table;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw Utils.error("tablebase %s is too large", file);
+            }
+            table = channel.map(FileChannel.MapMode.READ_ONLY,
+                                0, channel.size());
+        }
+        if (table.capacity() < HEADER_BYTES
+            || table.getInt(0) != MAGIC
+            || table.getInt(VERSION_OFFSET) != VERSION
+            || table.getInt(WHITES_OFFSET) != whites
+            || table.getInt(BLACKS_OFFSET) != blacks
+            || table.capacity() != fileSize(whites, blacks,
+                                            table.getInt(BITS_OFFSET))) {
+            throw Utils.error("%s is not a tablebase for its class", file);
+        }
+        return table;
+    }
+
+    /** Return the size in bytes of the file for the class with WHITES
+     *  WHITE pieces and BLACKS BLACK pieces, with BITS bits per
+     *  result. */
+    static long fileSize(int whites, int blacks, int bits) {
+        long perWord = Long.SIZE / bits;
+        long words = (2 * size(whites, blacks) + perWord - 1) / perWord;
+        return HEADER_BYTES + words * Long.BYTES;
+    }
+
+    /** Layout of the header of a file: a magic number identifying
+     *  tablebases, the format version, the numbers of WHITE and BLACK
+     *  pieces, the bits per result, and the longest distance.  The
+     *  results follow, packed into longs from the low bits up, first
+     *  those with WHITE to move and then those with BLACK to move. */
+    static final int
+        MAGIC = 0x54424153, VERSION = 1,
+        VERSION_OFFSET = 4, WHITES_OFFSET = 8, BLACKS_OFFSET = 12,
+        BITS_OFFSET = 16, MAX_DISTANCE_OFFSET = 20, HEADER_BYTES = 24;
+
+    /** Number of squares other than the king's that a piece may occupy
+     *  (numbering the squares other than the king's as slots). */
+    private static final int SLOTS = NUM_SQUARES - 1;
+
+    /** Index of the throne, which no piece but the king may occupy. */
+    private static final int THRONE_INDEX = Board.THRONE.index();
+
+    /** CHOOSE[n][k] is the binomial coefficient n choose k. */
+    private static final long[][] CHOOSE = new long[NUM_SQUARES + 1][];
+
+    /** SYMMETRIES[t][i] is the index of the square to which symmetry t
+     *  maps the square with index i.  Symmetry 0 is the identity. */
+    private static final int[][] SYMMETRIES = new int[8][NUM_SQUARES];
+
+    /** The squares to which symmetries map the king, in the triangle
+     *  1 <= col <= row <= 4, in order of index. */
+    private static final int[] KING_SQUARES;
+
+    /** KING_RANK[i] is the position of square i in KING_SQUARES, if it is
+     *  there. */
+    private static final int[] KING_RANK = new int[NUM_SQUARES];
+
+    /** KING_SYMMETRY[i] is the (first) symmetry that maps square i, if it
+     *  is off the edge, into KING_SQUARES. */
+    private static final int[] KING_SYMMETRY = new int[NUM_SQUARES];
+
+    static {
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            CHOOSE[n] = new long[MAX_PIECES + 1];
+            for (int k = 0; k <= MAX_PIECES; k += 1) {
+                CHOOSE[n][k] = k == 0 ? 1 : n == 0 ? 0
+                    : CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+        int last = BOARD_SIZE - 1;
+        for (int t = 0; t < SYMMETRIES.length; t += 1) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                int col = i % BOARD_SIZE, row = i / BOARD_SIZE;
+                if ((t & 4) != 0) {
+                    int swap = col;
+                    col = row;
+                    row = swap;
+                }
+                col = (t & 1) != 0 ? last - col : col;
+                row = (t & 2) != 0 ? last - row : row;
+                SYMMETRIES[t][i] = sq(col, row).index();
+            }
+        }
+        int[] kings = new int[NUM_SQUARES];
+        int n = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int col = i % BOARD_SIZE, row = i / BOARD_SIZE;
+            if (1 <= col && col <= row && row <= last / 2) {
+                KING_RANK[i] = n;
+                kings[n] = i;
+                n += 1;
+            }
+        }
+        KING_SQUARES = Arrays.copyOf(kings, n);
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int t = SYMMETRIES.length - 1; t >= 0; t -= 1) {
+                int s = SYMMETRIES[t][i];
+                int col = s % BOARD_SIZE, row = s / BOARD_SIZE;
+                if (1 <= col && col <= row && row <= last / 2) {
+                    KING_SYMMETRY[i] = t;
+                }
+            }
+        }
+    }
+
+    /** _tables[w][b] is the contents of the file for the class with w
+     *  WHITE pieces and b BLACK pieces, or null if I do not have it. */
+    private final MappedByteBuffer[][] _tables =
+        new MappedByteBuffer[MAX_PIECES + 1][MAX_PIECES + 1];
+    /** The longest distance in any of _tables. */
+    private int _maxDistance;
+}
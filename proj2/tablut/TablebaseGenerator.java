@@ -0,0 +1,300 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tablut.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** Computes the endgame tablebases read by Tablebase, by retrograde
+ *  analysis.  Classes are generated in order of the number of pieces, so
+ *  that the classes a capture leads to are done (and on disk) before the
+ *  classes the capture is made from.
+ *
+ *  Within a class, results are found in sweeps over all positions.  Sweep
+ *  n finds the positions that are n plies from the end: with n odd, those
+ *  with a move to a position (in this class or, by a capture, a smaller
+ *  one) already known to be lost in n - 1; with n even, those all of
+ *  whose moves lead to positions already known to be won in fewer than n.
+ *  Sweeps continue until two in a row find nothing and no smaller class
+ *  has longer distances.  Each sweep is divided among several threads,
+ *  which need no locking: a thread writes only the results of the
+ *  positions it is given, and results written during a sweep are ignored
+ *  until the next one.  Only the class being generated is held in memory
+ *  (two bytes per position); it is written to disk packed as each
+ *  class is finished, and smaller classes are read from their files.
+ *  @author Michael Chien
+ */
+class TablebaseGenerator {
+
+    /** Generate tablebases as described by ARGS (see the usage
+     *  message). */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--pieces=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --={1}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java tablut.TablebaseGenerator"
+                               + " [--pieces=N] [--threads=N] DIR");
+            System.exit(1);
+        }
+        try {
+            int pieces = Integer.parseInt(options.getFirst("--pieces", "2"));
+            int threads = Integer.parseInt(
+                options.getFirst("--threads",
+                                 Integer.toString(Runtime.getRuntime()
+                                                  .availableProcessors())));
+            new TablebaseGenerator(options.getFirst("--"), threads,
+                                   System.out).generate(pieces);
+        } catch (NumberFormatException excp) {
+            System.err.println("number too large");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not write tablebase: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A generator that writes tablebases to directory DIR, using THREADS
+     *  threads, and summarizes each class on PROGRESS (unless it is
+     *  null). */
+    TablebaseGenerator(String dir, int threads, PrintStream progress) {
+        if (threads <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _dir = dir;
+        _threads = threads;
+        _progress = progress;
+    }
+
+    /** Generate every class with at most PIECES pieces besides the king
+     *  that is not already in my directory. */
+    void generate(int pieces) throws IOException {
+        if (pieces < 0 || pieces > Tablebase.MAX_PIECES) {
+            throw Utils.error("piece count must be between 0 and %d",
+                              Tablebase.MAX_PIECES);
+        }
+        new File(_dir).mkdirs();
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            for (int n = 0; n <= pieces; n += 1) {
+                for (int whites = n; whites >= 0; whites -= 1) {
+                    _known = new Tablebase(_dir);
+                    if (!_known.has(whites, n - whites)) {
+                        generate(pool, whites, n - whites);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Generate the class with WHITES WHITE pieces and BLACKS BLACK
+     *  pieces using POOL, and write it to its file. */
+    private void generate(ForkJoinPool pool, int whites, int blacks)
+        throws IOException {
+        long start = System.currentTimeMillis();
+        long size = Tablebase.size(whites, blacks);
+        if (2 * size > Integer.MAX_VALUE) {
+            throw Utils.error("class %s is too large",
+                              Tablebase.fileName(whites, blacks));
+        }
+        _whites = whites;
+        _blacks = blacks;
+        _size = (int) size;
+        _results = new short[2 * _size];
+        int quiet = 0;
+        for (_sweep = 0; quiet < 2 || _sweep <= _known.maxDistance() + 1;
+             _sweep += 1) {
+            _found.set(0);
+            pool.invoke(new Sweep(0, _results.length));
+            quiet = _found.get() == 0 ? quiet + 1 : 0;
+        }
+        int maxDistance = 0;
+        long wins = 0, losses = 0;
+        for (short result : _results) {
+            if (result > 0) {
+                maxDistance = Math.max(maxDistance, result - 1);
+                if (Tablebase.isWin(result)) {
+                    wins += 1;
+                } else {
+                    losses += 1;
+                }
+            }
+        }
+        write(maxDistance);
+        if (_progress != null) {
+            _progress.printf("%s: %d positions, %d won and %d lost for the"
+                             + " side to move, longest %d plies, %d ms%n",
+                             Tablebase.fileName(whites, blacks), 2 * size,
+                             wins, losses, maxDistance,
+                             System.currentTimeMillis() - start);
+        }
+        _results = null;
+    }
+
+    /** Write _results to the file for the current class, whose longest
+     *  distance is MAXDISTANCE, packed as Tablebase expects.  Impossible
+     *  and unresolved positions are written as 0. */
+    private void write(int maxDistance) throws IOException {
+        int bits = 1;
+        while ((1 << bits) <= maxDistance + 1) {
+            bits *= 2;
+        }
+        int perWord = Long.SIZE / bits;
+        File file = new File(_dir, Tablebase.fileName(_whites, _blacks));
+        try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(file)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt(_whites);
+            out.writeInt(_blacks);
+            out.writeInt(bits);
+            out.writeInt(maxDistance);
+            for (int i = 0; i < _results.length; i += perWord) {
+                long word = 0;
+                for (int k = 0; k < perWord && i + k < _results.length;
+                     k += 1) {
+                    long result = Math.max(0, _results[i + k]);
+                    word |= result << k * bits;
+                }
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /** Find the results, if they are _sweep plies from the end, of the
+     *  positions numbered LO .. HI-1 in _results, using BOARD, and return
+     *  the number found. */
+    private int sweep(int lo, int hi, Board board) {
+        int[] pieces = new int[1 + Tablebase.MAX_PIECES];
+        int[] whites = new int[Tablebase.MAX_PIECES],
+            blacks = new int[Tablebase.MAX_PIECES];
+        int[] moves = new int[Board.MAX_MOVES];
+        int found = 0;
+        for (int i = lo; i < hi; i += 1) {
+            if (_results[i] != 0) {
+                continue;
+            }
+            int index = i % _size;
+            if (!Tablebase.position(_whites, _blacks, index, pieces)) {
+                _results[i] = IMPOSSIBLE;
+                continue;
+            }
+            System.arraycopy(pieces, 1, whites, 0, _whites);
+            System.arraycopy(pieces, 1 + _whites, blacks, 0, _blacks);
+            Piece turn = i < _size ? WHITE : BLACK;
+            board.setPosition(pieces[0], whites, _whites,
+                              blacks, _blacks, turn);
+            int result = resolve(board, moves);
+            if (result != 0) {
+                _results[i] = (short) result;
+                found += 1;
+            }
+        }
+        return found;
+    }
+
+    /** Return the result of the position on BOARD if it is _sweep plies
+     *  from the end, and otherwise 0, using MOVES as scratch space. */
+    private int resolve(Board board, int[] moves) {
+        int n = board.legalMoves(board.turn(), moves);
+        boolean findWin = _sweep % 2 == 1;
+        if (n == 0 || _sweep == 0) {
+            return n == 0 && _sweep == 0 ? 1 : 0;
+        }
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            int child = board.winner() != null ? 1 : result(board);
+            board.undo();
+            boolean known = child > 0 && child - 1 < _sweep;
+            if (findWin && known && !Tablebase.isWin(child)
+                && child == _sweep) {
+                return _sweep + 1;
+            } else if (!findWin && !(known && Tablebase.isWin(child))) {
+                return 0;
+            }
+        }
+        return findWin ? 0 : _sweep + 1;
+    }
+
+    /** Return the result of the position on BOARD, which has no winner,
+     *  as far as it is known: from _results if it is in the class being
+     *  generated, and otherwise from the smaller class it was captured
+     *  down to. */
+    private int result(Board board) {
+        int whites = board.pieceCount(WHITE) - 1,
+            blacks = board.pieceCount(BLACK);
+        if (whites != _whites || blacks != _blacks) {
+            return _known.probe(board);
+        }
+        int i = (int) Tablebase.index(board);
+        return Math.max(0, _results[board.turn() == WHITE ? i : i + _size]);
+    }
+
+    /** A task that finds the results, if they are _sweep plies from the
+     *  end, of a range of positions, dividing the range among other tasks
+     *  if it is large. */
+    private class Sweep extends RecursiveAction {
+        /** A task for the positions numbered LO .. HI-1 in _results. */
+        Sweep(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= CHUNK) {
+                _found.addAndGet(sweep(_lo, _hi, new Board()));
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Sweep(_lo, mid), new Sweep(mid, _hi));
+            }
+        }
+
+        /** The range of positions to sweep. */
+        private final int _lo, _hi;
+    }
+
+    /** Number of positions a Sweep handles without dividing them. */
+    private static final int CHUNK = 1 << 12;
+
+    /** Value in _results of a position that cannot occur. */
+    private static final short IMPOSSIBLE = -1;
+
+    /** Directory holding the tablebases. */
+    private final String _dir;
+    /** Number of threads. */
+    private final int _threads;
+    /** Where to summarize each class generated, or null. */
+    private final PrintStream _progress;
+    /** The tablebases generated so far. */
+    private Tablebase _known;
+    /** Numbers of WHITE and BLACK pieces in the class being generated. */
+    private int _whites, _blacks;
+    /** Number of positions in the class with each side to move. */
+    private int _size;
+    /** Results of the positions in the class, as for Tablebase.probe:
+     *  first those with WHITE to move and then those with BLACK to move,
+     *  0 for those not yet known, and IMPOSSIBLE for impossible ones. */
+    private short[] _results;
+    /** Number of the current sweep. */
+    private int _sweep;
+    /** Number of results found by the current sweep. */
+    private final AtomicLong _found = new AtomicLong();
+}
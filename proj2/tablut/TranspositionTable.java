@@ -0,0 +1,144 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by the Zobrist key of
+ *  a position (Board.hash()).  Each entry records the depth searched, the
+ *  kind of bound found, the score, and the best move.  The table is
+ *  allocated once as two parallel arrays of longs; looking up and storing
+ *  entries allocates nothing.
+ *
+ *  Entries come in buckets of two.  The first entry of a bucket keeps the
+ *  deepest result seen for its positions (unless it is left over from an
+ *  earlier search), and the second always takes the newest result, so
+ *  shallow results near the leaves cannot push out expensive ones.
+ *
+ *  Several search threads may share one table without locking.  Each
+ *  entry's key is stored XORed with its contents, so an entry torn by
+ *  two threads writing at once no longer matches its key and is simply
+ *  not found.
+ *  @author Michael Chien
+ */
+final class TranspositionTable {
+
+    /** Bound kinds: the score is exact, a lower bound (the search failed
+     *  high), or an upper bound (the search failed low). */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** A table occupying at most MEGABYTES megabytes (and at least one
+     *  bucket). */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(2, (long) megabytes * (1 << 20) / ENTRY_BYTES);
+        int size = Integer.highestOneBit((int) Math.min(entries, MAX_ENTRIES));
+        _keys = new long[size];
+        _data = new long[size];
+    }
+
+    /** Return the number of entries in this table. */
+    int size() {
+        return _keys.length;
+    }
+
+    /** Mark the start of a new search.  Entries stored by earlier searches
+     *  remain available but are the first to be replaced. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /** Return the entry for the position with key KEY, or 0 if there is
+     *  none.  Decode the result with move, depth, bound, and score. */
+    long probe(long key) {
+        int i = bucket(key);
+        long data0 = _data[i], data1 = _data[i + 1];
+        if (data0 != 0 && (_keys[i] ^ data0) == key) {
+            return data0;
+        } else if (data1 != 0 && (_keys[i + 1] ^ data1) == key) {
+            return data1;
+        }
+        return 0;
+    }
+
+    /** Record that a search to depth DEPTH of the position with key KEY
+     *  found SCORE, a bound of kind BOUND, with best move MOVE (a move
+     *  code, or 0 if none). */
+    void store(long key, int move, int depth, int bound, int score) {
+        int i = bucket(key);
+        long entry = ((long) score << SCORE_SHIFT)
+            | (long) _age << AGE_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT
+            | move;
+        long data0 = _data[i];
+        boolean same = (_keys[i] ^ data0) == key;
+        if (same || data0 == 0
+            || age(data0) != _age || depth >= depth(data0)) {
+            if (move == 0 && same) {
+                entry |= move(data0);
+            }
+            _keys[i] = key ^ entry;
+            _data[i] = entry;
+        } else {
+            _keys[i + 1] = key ^ entry;
+            _data[i + 1] = entry;
+        }
+    }
+
+    /** Return the best move (a move code, or 0) recorded in ENTRY. */
+    static int move(long entry) {
+        return (int) (entry & MOVE_MASK);
+    }
+
+    /** Return the search depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT & DEPTH_MASK);
+    }
+
+    /** Return the bound kind (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT & BOUND_MASK);
+    }
+
+    /** Return the score recorded in ENTRY. */
+    static int score(long entry) {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    /** Return the search number recorded in ENTRY. */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT & AGE_MASK);
+    }
+
+    /** Return the index of the first entry of the bucket for KEY. */
+    private int bucket(long key) {
+        return (int) (key >>> 32 ^ key) & (_keys.length - 2);
+    }
+
+    /** Layout of an entry: the move code in the low bits, then depth,
+     *  bound kind, and search number, and the score in the high 32 bits. */
+    private static final int
+        MOVE_MASK = (1 << 13) - 1,
+        DEPTH_SHIFT = 13, DEPTH_MASK = (1 << 8) - 1,
+        BOUND_SHIFT = 21, BOUND_MASK = 3,
+        AGE_SHIFT = 23, AGE_MASK = (1 << 6) - 1,
+        SCORE_SHIFT = 32;
+
+    /** Bytes per entry. */
+    private static final int ENTRY_BYTES = 16;
+    /** Maximum number of entries. */
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    /** The keys of the positions in each entry, each XORed with the
+     *  corresponding element of _data. */
+    private final long[] _keys;
+    /** The encoded contents of each entry (0 for an empty entry). */
+    private final long[] _data;
+    /** The number of the current search, modulo AGE_MASK + 1. */
+    private int _age;
+}
@@ -3,7 +3,16 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 /** The suite of all JUnit tests for the enigma package.
  *  @author Michael Chien
@@ -27,6 +36,51 @@ public class UnitTest {
         assertEquals(Piece.EMPTY, board.get(0, 0));
     }
 
+    @Test
+    public void testPieceCount() {
+        Board board = new Board();
+        assertEquals(9, board.pieceCount(Piece.WHITE));
+        assertEquals(16, board.pieceCount(Piece.BLACK));
+        board.put(Piece.EMPTY, Square.sq(4, 4));
+        board.put(Piece.BLACK, Square.sq(8, 8));
+        assertEquals(8, board.pieceCount(Piece.WHITE));
+        assertEquals(17, board.pieceCount(Piece.BLACK));
+        assertEquals(null, board.kingPosition());
+        board.put(Piece.KING, Square.sq(0, 8));
+        assertEquals(Piece.KING, board.get(0, 8));
+        assertEquals(Square.sq(0, 8), board.kingPosition());
+        assertEquals(false, board.isUnblockedMove(Square.sq(0, 0),
+                Square.sq(0, 8)));
+    }
+
+    @Test
+    public void testPieceList() {
+        Board board = new Board();
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        board.makeMove(Square.sq(2, 4), Square.sq(2, 0));
+        board.makeMove(Square.sq(8, 5), Square.sq(6, 5));
+        board.makeMove(Square.sq(5, 4), Square.sq(5, 6));
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            int n = 0;
+            for (Square sq : Square.SQUARE_LIST) {
+                if (board.get(sq).side() == side) {
+                    n += 1;
+                }
+            }
+            assertEquals(n, board.pieceCount(side));
+            HashSet<Square> seen = new HashSet<>();
+            for (int k = 0; k < board.pieceCount(side); k += 1) {
+                Square sq = board.pieceSquare(side, k);
+                assertEquals(side, board.get(sq).side());
+                seen.add(sq);
+            }
+            assertEquals(n, seen.size());
+        }
+        board.undo();
+        assertEquals(8, board.pieceCount(Piece.WHITE));
+        assertEquals(Square.sq(4, 4), board.kingPosition());
+    }
+
     @Test
     public void testIsUnblocked() {
         Board board = new Board();
@@ -52,6 +106,52 @@ public class UnitTest {
         assertEquals(false, board.isLegal(Square.sq(2, 4), Square.sq(2, 8)));
     }
 
+    @Test
+    public void testLegalMovesMatchIsLegal() {
+        Board board = new Board();
+        board.makeMove(Square.sq(4, 1), Square.sq(2, 1));
+        board.makeMove(Square.sq(4, 3), Square.sq(1, 3));
+        board.makeMove(Square.sq(2, 1), Square.sq(2, 2));
+        board.makeMove(Square.sq(4, 4), Square.sq(4, 3));
+        for (Piece side : new Piece[] { Piece.BLACK, Piece.WHITE }) {
+            HashSet<Move> expected = new HashSet<>();
+            for (int k = 0; k < board.pieceCount(side); k += 1) {
+                Square from = board.pieceSquare(side, k);
+                for (Square to : Square.SQUARE_LIST) {
+                    if (board.get(from) == Piece.KING
+                        ? board.isUnblockedMove(from, to)
+                        : to != Board.THRONE && board.get(to) == Piece.EMPTY
+                            && board.isUnblockedMove(from, to)) {
+                        expected.add(Move.mv(from, to));
+                    }
+                }
+            }
+            assertEquals(expected, new HashSet<>(board.legalMoves(side)));
+        }
+        assertEquals(true, board.legalMoves(Piece.WHITE)
+                .contains(Move.mv("e4-5")));
+        assertEquals(false, board.legalMoves(Piece.WHITE)
+                .contains(Move.mv("d5-e")));
+    }
+
+    @Test
+    public void testMoveCodes() {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(Piece.BLACK, moves);
+        assertEquals(80, n);
+        HashSet<Move> decoded = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            Move m = Move.mv(moves[i]);
+            assertEquals(moves[i], m.code());
+            decoded.add(m);
+        }
+        assertEquals(new HashSet<>(board.legalMoves(Piece.BLACK)), decoded);
+        board.makeMove(Move.mv("a4-3").code());
+        assertEquals(Piece.BLACK, board.get(Square.sq("a3")));
+        assertEquals(Piece.WHITE, board.turn());
+    }
+
     @Test
     public void testMakeMove() {
         Board board = new Board();
@@ -85,9 +185,605 @@ public class UnitTest {
         assertEquals(Piece.WHITE, board.get(Square.sq(3, 4)));
         assertEquals(Piece.WHITE, board.turn());
         assertEquals(1, board.moveCount());
-        assertEquals(2, board.bpositions().size());
+        assertEquals(2, board.positionCount());
+        assertEquals(1, board.moves().size());
+    }
+    @Test
+    public void testHash() {
+        Board board = new Board();
+        Board other = new Board();
+        long initial = board.hash();
+        board.makeMove(Square.sq(8, 5), Square.sq(6, 5));
+        board.makeMove(Square.sq(3, 4), Square.sq(3, 6));
+        board.makeMove(Square.sq(0, 3), Square.sq(1, 3));
+        other.makeMove(Square.sq(0, 3), Square.sq(1, 3));
+        other.makeMove(Square.sq(3, 4), Square.sq(3, 6));
+        other.makeMove(Square.sq(8, 5), Square.sq(6, 5));
+        assertEquals(board.hash(), other.hash());
+        assertEquals(false, board.hash() == initial);
+        board.undo();
+        board.undo();
+        board.undo();
+        assertEquals(initial, board.hash());
+        assertEquals(1, board.positionCount());
+    }
+
+    @Test
+    public void testUndoCapture() {
+        Board board = new Board();
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        board.makeMove(Square.sq(2, 4), Square.sq(2, 0));
+        long hash = board.hash();
+        board.makeMove(Square.sq(8, 5), Square.sq(6, 5));
+        assertEquals(true, board.captured());
+        assertEquals(Piece.EMPTY, board.get(Square.sq(6, 4)));
+        board.undo();
+        assertEquals(Piece.WHITE, board.get(Square.sq(6, 4)));
+        assertEquals(Piece.BLACK, board.get(Square.sq(8, 5)));
+        assertEquals(Piece.EMPTY, board.get(Square.sq(6, 5)));
+        assertEquals(Piece.BLACK, board.turn());
+        assertEquals(false, board.captured());
+        assertEquals(hash, board.hash());
+    }
+
+    @Test
+    public void testIsCapture() {
+        Board board = new Board();
+        assertEquals(0, board.lastMove());
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        board.makeMove(Square.sq(2, 4), Square.sq(2, 0));
+        assertEquals(Move.mv(Square.sq(2, 4), Square.sq(2, 0)).code(),
+                     board.lastMove());
+        int capture = Move.mv(Square.sq(8, 5), Square.sq(6, 5)).code(),
+            quiet = Move.mv(Square.sq(8, 5), Square.sq(7, 5)).code();
+        assertEquals(true, board.isCapture(capture));
+        assertEquals(false, board.isCapture(quiet));
+        board.makeMove(capture);
+        assertEquals(true, board.captured());
+        assertEquals(capture, board.lastMove());
+    }
+
+    @Test
+    public void testCaptureMoves() {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        assertEquals(0, board.captureMoves(Piece.BLACK, moves));
+        assertEquals(false, board.kingThreatened());
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        board.makeMove(Square.sq(2, 4), Square.sq(2, 0));
+        int n = board.captureMoves(Piece.BLACK, moves);
+        int capture = Move.mv(Square.sq(8, 5), Square.sq(6, 5)).code();
+        boolean found = false;
+        for (int i = 0; i < n; i += 1) {
+            assertEquals(true, board.isCapture(moves[i]));
+            found |= moves[i] == capture;
+        }
+        assertEquals(true, found);
+    }
+
+    @Test
+    public void testKingEscape() {
+        KingEscape escape = new KingEscape();
+        Board board = new Board();
+        assertEquals(KingEscape.FAR, escape.distance(board));
+        board.put(Piece.EMPTY, Square.sq(4, 5));
+        board.put(Piece.EMPTY, Square.sq(4, 6));
+        assertEquals(2, escape.distance(board));
+        assertEquals(0, escape.openLines(board));
+        board.put(Piece.KING, Square.sq(4, 6));
+        assertEquals(1, escape.distance(board));
+        assertEquals(2, escape.openLines(board));
+        assertEquals(true, escape.blocks(board, Square.sq(2, 6).index()));
+        assertEquals(false, escape.blocks(board, Square.sq(4, 5).index()));
+    }
+
+    @Test
+    public void testOpenLines() {
+        Board board = new Board();
+        int king = Board.THRONE.index();
+        assertEquals(0, board.openLines(king, -1));
+        board.makeMove(Square.sq(1, 4), Square.sq(1, 1));
+        int c3 = Square.sq(2, 2).index();
+        assertEquals(2, board.openLines(c3, -1));
+    }
+
+    @Test
+    public void testPrincipalVariation() {
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(200);
+        AI ai = new AI(options);
+        Board board = new Board();
+        long hash = board.hash();
+        Move move = ai.findMove(board);
+        assertEquals(hash, board.hash());
+        List<Move> pv = ai.principalVariation();
+        assertEquals(move, pv.get(0));
+        for (Move m : pv) {
+            assertEquals(true, board.isLegal(m));
+            board.makeMove(m);
+        }
+    }
+
+    @Test
+    public void testSearchIsRepeatable() {
+        SearchOptions options = new SearchOptions();
+        options.setDepth(4);
+        options.setMoveTime(Integer.MAX_VALUE);
+        String[][] openings = {
+            {}, {"i4-g"}, {"i4-g", "c5-1", "i6-g"}, {"d1-a", "e3-a"}
+        };
+        int[] moves = new int[Board.MAX_MOVES],
+            fresh = new int[Board.MAX_MOVES];
+        for (String[] opening : openings) {
+            Board played = new Board();
+            for (String m : opening) {
+                played.makeMove(Move.mv(m));
+            }
+            AI first = new AI(options);
+            Move move = first.findMove(new Board(played));
+            List<Move> pv = first.principalVariation();
+            while (played.moveCount() > 0) {
+                played.undo();
+            }
+            for (String m : opening) {
+                played.makeMove(Move.mv(m));
+                int n = played.legalMoves(played.turn(), moves);
+                for (int k = 0; k < n; k += 1) {
+                    played.makeMove(moves[k]);
+                    played.undo();
+                }
+            }
+            for (int k = 0; k < 3; k += 1) {
+                AI ai = new AI(options);
+                assertEquals(move, ai.findMove(new Board(played)));
+                assertEquals(pv, ai.principalVariation());
+            }
+            Board board = new Board();
+            for (String m : opening) {
+                board.makeMove(Move.mv(m));
+            }
+            int n = board.legalMoves(board.turn(), fresh);
+            assertEquals(n, played.legalMoves(played.turn(), moves));
+            assertArrayEquals(Arrays.copyOf(fresh, n),
+                              Arrays.copyOf(moves, n));
+        }
+    }
+
+    @Test
+    public void testNoMoves() {
+        Board board = new Board();
+        board.setPosition(Square.sq("a1").index(), new int[0], 0,
+                          new int[] {Square.sq("a2").index(),
+                                     Square.sq("b1").index()}, 2,
+                          Piece.WHITE);
+        String before = board.toString();
+        SearchOptions options = new SearchOptions();
+        options.setDepth(3);
+        AI ai = new AI(options);
+        assertNull(ai.findMove(board));
+        assertTrue(ai.principalVariation().isEmpty());
+        assertEquals(before, board.toString());
+        assertNull(board.winner());
+        assertFalse(board.hasMove(Piece.WHITE));
+        assertEquals(Piece.BLACK, board.winner());
+
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(options),
+                           new MCTSPlayer(options), false);
+        controller.board().setPosition(Square.sq("a1").index(), new int[0],
+                                       0, new int[] {Square.sq("a2").index(),
+                                                     Square.sq("b1").index()},
+                                       2, Piece.WHITE);
+        assertNull(new AI(options).create(Piece.WHITE, controller).myMove());
+    }
+
+    @Test
+    public void testMCTSNoMoves() {
+        SearchOptions options = new SearchOptions();
+        options.setPlayouts(200);
+        options.setHashSize(1);
+        MCTSPlayer player = new MCTSPlayer(options);
+        assertNotNull(player.findMove(new Board()));
+        Board board = new Board();
+        board.setPosition(Square.sq("a1").index(), new int[0], 0,
+                          new int[] {Square.sq("a2").index(),
+                                     Square.sq("b1").index()}, 2,
+                          Piece.WHITE);
+        String before = board.toString();
+        assertNull(player.findMove(board));
+        assertEquals(before, board.toString());
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), player, player, false);
+        controller.board().copy(board);
+        assertNull(player.create(Piece.WHITE, controller).myMove());
+    }
+
+    @Test
+    public void testMoveLimit() {
+        Board board = new Board();
+        board.setMoveLimit(4);
+        Board copy = new Board(board);
+        assertEquals(4, copy.moveLimit());
+        SearchOptions options = new SearchOptions();
+        options.setMoveTime(Integer.MAX_VALUE);
+        options.setGameTime(9000);
+        assertEquals(3000, new AI(options).allotTime(copy));
+        assertEquals(6, AI.maxDepth(copy));
+        copy.makeMove(Move.mv("a4-3"));
+        assertEquals(5, AI.maxDepth(copy));
+    }
+
+    @Test
+    public void testParallelSearch() {
+        SearchOptions options = new SearchOptions();
+        options.setThreads(3);
+        options.setDepth(3);
+        AI ai = new AI(options);
+        Board board = new Board();
+        long hash = board.hash();
+        Move move = ai.findMove(board);
+        assertEquals(hash, board.hash());
+        assertEquals(true, board.isLegal(move));
+        assertEquals(move, ai.principalVariation().get(0));
+    }
+
+    @Test
+    public void testSplitSearch() {
+        SearchOptions options = new SearchOptions();
+        options.setThreads(3);
+        options.setSplitRoot(true);
+        options.setDepth(3);
+        String[][] openings = { {}, {"i4-g"}, {"d1-a", "e3-a"} };
+        for (String[] opening : openings) {
+            Move move = null;
+            for (int k = 0; k < 4; k += 1) {
+                Board board = new Board();
+                for (String m : opening) {
+                    board.makeMove(Move.mv(m));
+                }
+                AI ai = new AI(options);
+                Move found = ai.findMove(board);
+                if (move == null) {
+                    move = found;
+                }
+                assertEquals(move, found);
+                List<Move> pv = ai.principalVariation();
+                assertEquals(move, pv.get(0));
+                for (Move m : pv) {
+                    assertTrue(board.isLegal(m));
+                    board.makeMove(m);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Board board = new Board();
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        Board copy = new Board(board);
+        copy.makeMove(Square.sq(2, 4), Square.sq(2, 0));
         assertEquals(1, board.moves().size());
+        assertEquals(2, copy.moves().size());
+        copy.undo();
+        copy.undo();
+        assertEquals(1, board.moveCount());
+        assertEquals(Piece.BLACK, board.get(Square.sq(6, 3)));
+    }
+
+    @Test
+    public void testNullMove() {
+        Board board = new Board();
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        long hash = board.hash();
+        board.makeNullMove();
+        assertEquals(Piece.BLACK, board.turn());
+        assertEquals(2, board.moveCount());
+        assertNotEquals(hash, board.hash());
+        board.undoNullMove();
+        assertEquals(Piece.WHITE, board.turn());
+        assertEquals(1, board.moveCount());
+        assertEquals(hash, board.hash());
+    }
+
+    @Test
+    public void testSelectiveSearch() {
+        SearchOptions options = new SearchOptions();
+        options.setDepth(4);
+        options.setNullMove(false);
+        options.setLateMoveReduction(false);
+        options.setFutility(false);
+        AI full = new AI(options);
+        Board board = new Board();
+        assertEquals(true, board.isLegal(full.findMove(board)));
+        SearchOptions pruning = new SearchOptions();
+        pruning.setDepth(4);
+        AI selective = new AI(pruning);
+        assertEquals(true, board.isLegal(selective.findMove(board)));
+        assertTrue(selective.nodes() < full.nodes());
+        pruning.setLateMoveDepth(2);
+        pruning.setLateMoveIndex(1);
+        assertEquals(true, board.isLegal(new AI(pruning).findMove(board)));
+        assertEquals(new Board().toString(), board.toString());
+    }
+
+    @Test
+    public void testEvalTerms() {
+        Board board = new Board();
+        assertEquals(4, board.throneGuards());
+        assertEquals(4, board.kingEdgeDistance());
+        int white = board.mobility(Piece.WHITE),
+            black = board.mobility(Piece.BLACK);
+        board.makeMove(Square.sq(8, 3), Square.sq(6, 3));
+        board.makeMove(Square.sq(2, 4), Square.sq(2, 0));
+        board.makeMove(Square.sq(8, 5), Square.sq(6, 5));
+        assertEquals(4, board.throneGuards());
+        board.makeMove(Square.sq(3, 4), Square.sq(3, 6));
+        assertEquals(3, board.throneGuards());
+        board.undo();
+        board.undo();
+        board.undo();
+        board.undo();
+        assertEquals(white, board.mobility(Piece.WHITE));
+        assertEquals(black, board.mobility(Piece.BLACK));
+        assertEquals(4, board.throneGuards());
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        BookBuilder builder = new BookBuilder(2);
+        List<Move> game = Arrays.asList(Move.mv("a4-3"), Move.mv("e4-f"),
+                                        Move.mv("b5-3"));
+        builder.addGame(game);
+        builder.addGame(game);
+        builder.addGame(Arrays.asList(Move.mv("d1-2")));
+        assertEquals(3, builder.games());
+        assertEquals(3, builder.size());
+        File file = File.createTempFile("book", ".bin");
+        file.deleteOnExit();
+        builder.write(file.getPath());
+        OpeningBook book = new OpeningBook(file.getPath());
+        assertEquals(3, book.size());
+        Board board = new Board();
+        assertEquals(Move.mv("a4-3").code(), book.move(board));
+        board.makeMove(Move.mv("a4-3"));
+        assertEquals(Move.mv("e4-f").code(), book.move(board));
+        board.makeMove(Move.mv("e4-f"));
+        assertEquals(0, book.move(board));
+
+        SearchOptions options = new SearchOptions();
+        options.setBook(book);
+        AI ai = new AI(options);
+        assertEquals(Move.mv("a4-3"), ai.findMove(new Board()));
+        assertEquals(0, ai.nodes());
+    }
+
+    @Test
+    public void testMCTS() {
+        SearchOptions options = new SearchOptions();
+        options.setPlayouts(30000);
+        options.setHashSize(1);
+        MCTSPlayer player = new MCTSPlayer(options);
+        Board board = new Board();
+        board.put(Piece.EMPTY, Square.sq("e6"));
+        board.put(Piece.EMPTY, Square.sq("e7"));
+        board.put(Piece.EMPTY, Square.sq("e8"));
+        board.put(Piece.EMPTY, Square.sq("e9"));
+        String before = board.toString();
+        List<Move> blocks = Arrays.asList(Move.mv("d9-e"), Move.mv("f9-e"),
+                                          Move.mv("a6-e"), Move.mv("i6-e"));
+        assertTrue(blocks.contains(player.findMove(board)));
+        assertEquals(30000, player.playouts());
+        assertEquals(before, board.toString());
+        options.setThreads(2);
+        player = new MCTSPlayer(options);
+        assertTrue(board.isLegal(player.findMove(board)));
+        assertEquals(30000, player.playouts());
+        assertEquals(before, board.toString());
+    }
+
+    @Test
+    public void testPlayout() {
+        Playout kernel = new Playout(300, 1);
+        Board start = new Board();
+        start.makeMove(Move.mv("d1-3"));
+        kernel.setPosition(start);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int game = 0; game < 200; game += 1) {
+            int length = kernel.play();
+            assertEquals(length, kernel.length());
+            Board board = new Board(start);
+            for (int k = 0; k < length; k += 1) {
+                assertNull(board.winner());
+                assertTrue(board.isLegal(Move.mv(kernel.move(k))));
+                board.makeMove(kernel.move(k));
+            }
+            if (board.winner() == null && length < 300) {
+                assertEquals(0, board.legalMoves(board.turn(), moves));
+                assertEquals(board.turn().opponent(), kernel.winner());
+            } else {
+                assertEquals(board.winner(), kernel.winner());
+            }
+        }
+    }
+
+    @Test
+    public void testPlayoutNoMoves() {
+        Playout kernel = new Playout(300, 1);
+        Board board = new Board();
+        board.setPosition(Square.sq("e5").index(),
+                          new int[] {Square.sq("e4").index()}, 1,
+                          new int[0], 0, Piece.BLACK);
+        kernel.setPosition(board);
+        assertEquals(0, kernel.play());
+        assertEquals(Piece.WHITE, kernel.winner());
+        board.setPosition(Square.sq("a1").index(), new int[0], 0,
+                          new int[] {Square.sq("a2").index(),
+                                     Square.sq("b1").index()}, 2,
+                          Piece.WHITE);
+        kernel.setPosition(board);
+        assertEquals(0, kernel.play());
+        assertEquals(Piece.BLACK, kernel.winner());
     }
+
+    @Test
+    public void testSearchStats() {
+        SearchOptions options = new SearchOptions();
+        options.setDepth(4);
+        AI ai = new AI(options);
+        ai.findMove(new Board());
+        SearchStats stats = ai.stats();
+        assertEquals(ai.nodes(), stats.nodes());
+        assertEquals(4, stats.iterations());
+        assertTrue(stats.quiescenceNodes() > 0
+                   && stats.quiescenceNodes() < stats.nodes());
+        assertTrue(stats.probes() > 0);
+        assertTrue(stats.hitRate() >= 0 && stats.hitRate() <= 1);
+        assertTrue(stats.firstMoveCutoffRate() > 0
+                   && stats.firstMoveCutoffRate() <= 1);
+        assertTrue(stats.branchingFactor() > 0);
+        assertTrue(stats.toString().contains("nodes/s"));
+    }
+
+    @Test
+    public void testPerft() {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES],
+            replies = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(board.turn(), moves);
+        long leaves = 0;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            leaves += board.legalMoves(board.turn(), replies);
+            board.undo();
+        }
+        Perft perft = new Perft(1, 0);
+        assertEquals(1, perft.count(board, 0));
+        assertEquals(n, perft.count(board, 1));
+        assertEquals(leaves, perft.count(board, 2));
+        assertEquals(n, perft.rootMoves());
+        long deep = perft.count(board, 4), sum = 0;
+        for (int k = 0; k < perft.rootMoves(); k += 1) {
+            sum += perft.rootCount(k);
+        }
+        assertEquals(deep, sum);
+        assertEquals(deep, new Perft(2, 1).count(board, 4));
+        assertEquals(new Board().toString(), board.toString());
+    }
+
+    @Test
+    public void testMatch() throws IOException {
+        assertEquals(0, Match.elo(0.5), 1e-9);
+        assertEquals(100, Match.elo(Match.score(100)), 1e-6);
+        assertEquals(-200, Match.elo(Match.score(-200)), 1e-6);
+        SearchOptions a = Match.engine("depth=2,time=10000"),
+            b = Match.engine("depth=1,time=10000,nullmove=0");
+        assertEquals(2, a.depth());
+        assertFalse(b.nullMove());
+        Match match = new Match(a, b, 2);
+        match.addOpenings(new BufferedReader(new StringReader(
+            "# two openings\n\nd1-a e3-a\nd1-a e4-b # comment\n")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        match.play(4, new PrintStream(out));
+        int[] results = match.results();
+        assertEquals(4, results[0] + results[1] + results[2]);
+        assertTrue(out.toString().contains("Games 4: A"));
+        assertNull(match.decision());
+        Board stuck = new Board();
+        stuck.setPosition(Square.sq("a1").index(), new int[0], 0,
+                          new int[] {Square.sq("a2").index(),
+                                     Square.sq("b1").index()}, 2,
+                          Piece.WHITE);
+        Match single = new Match(a, b, 1);
+        assertEquals(Match.LOSS, single.playGame(new Board(stuck), true));
+        assertEquals(Match.WIN, single.playGame(stuck, false));
+        try {
+            match.addOpenings(new BufferedReader(new StringReader("e3-a")));
+            fail("illegal opening accepted");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testPondering() throws InterruptedException {
+        SearchOptions options = new SearchOptions();
+        options.setPonder(true);
+        options.setDepth(3);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(options),
+                           new MCTSPlayer(options), false);
+        AI ai = (AI) new AI(options).create(Piece.WHITE, controller);
+        controller.board().makeMove(Move.mv("a4-3"));
+        ai.startPondering();
+        Thread.sleep(50);
+        ai.stopPondering();
+        assertTrue(ai.nodes() > 0);
+        assertEquals(Piece.WHITE, controller.board().turn());
+        Move move = ai.findMove(new Board(controller.board()));
+        controller.board().makeMove(move);
+        ai.startPondering();
+        Thread.sleep(50);
+        ai.stopPondering();
+        assertEquals(move.code(), controller.board().lastMove());
+        assertEquals(Piece.BLACK, controller.board().turn());
+    }
+
+    @Test
+    public void testTablebase() throws IOException {
+        File dir = Files.createTempDirectory("tablebase").toFile();
+        new TablebaseGenerator(dir.getPath(), 2, null).generate(1);
+        Tablebase tablebase = new Tablebase(dir.getPath());
+        assertTrue(tablebase.has(0, 1));
+        assertFalse(tablebase.has(0, 2));
+        int[] none = {}, blacks = {Square.sq("a1").index()};
+        Board board = new Board();
+        board.setPosition(Board.THRONE.index(), none, 0, blacks, 1,
+                          Piece.BLACK);
+        int result = tablebase.probe(board);
+        assertFalse(Tablebase.isWin(result));
+        assertEquals(2, Tablebase.distance(result));
+        board.setPosition(Square.sq("c7").index(), none, 0,
+                          new int[] {Square.sq("g3").index()}, 1,
+                          Piece.WHITE);
+        result = tablebase.probe(board);
+        assertTrue(Tablebase.isWin(result));
+        assertEquals(1, Tablebase.distance(result));
+        int[] pieces = new int[2];
+        long index = Tablebase.index(board);
+        assertTrue(Tablebase.position(0, 1, index, pieces));
+        board.setPosition(pieces[0], none, 0, new int[] {pieces[1]}, 1,
+                          Piece.WHITE);
+        assertEquals(index, Tablebase.index(board));
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = new Board().hash();
+        assertEquals(0, table.probe(key));
+        int move = Move.mv("a4-3").code();
+        table.store(key, move, 5, TranspositionTable.LOWER, -1234);
+        long entry = table.probe(key);
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        assertEquals(-1234, TranspositionTable.score(entry));
+        long other = key + table.size();
+        table.store(other, 0, 2, TranspositionTable.EXACT, 7);
+        assertEquals(5, TranspositionTable.depth(table.probe(key)));
+        assertEquals(7, TranspositionTable.score(table.probe(other)));
+        table.clear();
+        assertEquals(0, table.probe(key));
+    }
+
     @Test
     public void testCapture() {
         Board board = new Board();